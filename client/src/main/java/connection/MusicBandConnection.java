@@ -1,40 +1,113 @@
 package connection;
 
+import codec.Codecs;
+import codec.MessageCodec;
 import collectionitems.MusicBand;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+/**
+ * Connection to the server. Requests are sent with an id and any number of them can wait for responses at the same time,
+ * the reader thread completes the future of the request whose id is in the response and passes updates to the updater.
+ * While a snapshot is streamed its chunks go to the consumer of the request and updates are held back,
+ * after the end of the snapshot updates newer than it are passed on
+ */
 public class MusicBandConnection implements Closeable {
+    private static final MessageCodec codec = Codecs.BINARY;
+    /**
+     * interval of pings that keep the connection alive while the user does nothing,
+     * must be shorter than the idle timeout of the server
+     */
+    private static final long PING_INTERVAL_MILLIS = 60 * 1000;
+    /**
+     * time after which the server does not start a request, requests that waited so long answer with EXPIRED
+     */
+    private static final int REQUEST_TIMEOUT_MILLIS = 30 * 1000;
+
     private Socket socket;
+    private DataInputStream inputStream;
     private String username;
     private String password;
-    private volatile MusicBandResponse response;
+    private volatile String token;
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final Map<Integer, CompletableFuture<MusicBandResponse>> pendingRequests = new ConcurrentHashMap<>();
+    private volatile IOException connectionError;
     private volatile Updater updater;
+    private final Map<Integer, Consumer<List<MusicBand>>> snapshotConsumers = new ConcurrentHashMap<>();
+    /**
+     * updates received while a snapshot is streamed, used only by the reader thread
+     */
+    private final List<MusicBandResponse> heldUpdates = new ArrayList<>();
+    private final Timer pingTimer = new Timer("ping", true);
 
     public MusicBandConnection(String ip, int port) throws IOException {
         socket = new Socket(ip, port);
-        response = null;
+        inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
         updater = null;
         Thread readResponseThread = new Thread(() -> {
             while (true){
                 try {
                     MusicBandResponse response = getResponse();
-                    if(response.status != ResponseStatus.SUCCESS && response.status != ResponseStatus.FAIL){
-                        if(updater != null){
-                            updater.update(response);
+                    if(response == null){
+                        continue;
+                    }
+                    if(response.token != null){
+                        token = response.token;
+                    }
+                    if(response.status == ResponseStatus.SNAPSHOT_CHUNK){
+                        Consumer<List<MusicBand>> consumer = snapshotConsumers.get(response.requestId);
+                        if(consumer != null){
+                            consumer.accept(response.musicBandList);
+                        }
+                        continue;
+                    }
+                    CompletableFuture<MusicBandResponse> future = response.requestId != 0
+                            ? pendingRequests.remove(response.requestId) : null;
+                    if(future != null){
+                        boolean snapshotEnded = snapshotConsumers.remove(response.requestId) != null;
+                        future.complete(response);
+                        if(snapshotEnded){
+                            releaseHeldUpdates(response.version);
                         }
                     }
-                    else {
-                        this.response = response;
+                    else if(response.status != ResponseStatus.SUCCESS && response.status != ResponseStatus.FAIL){
+                        if(!snapshotConsumers.isEmpty()){
+                            heldUpdates.add(response);
+                        }
+                        else if(updater != null){
+                            updater.update(response);
+                        }
                     }
                 } catch (IOException | ClassNotFoundException e) {
-                    e.printStackTrace();
+                    failPendingRequests(e instanceof IOException ? (IOException) e : new IOException(e));
+                    return;
                 }
             }
         });
         readResponseThread.setDaemon(true);
         readResponseThread.start();
+        pingTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try{
+                    ping();
+                } catch (IOException ex){
+                    pingTimer.cancel();
+                }
+            }
+        }, PING_INTERVAL_MILLIS, PING_INTERVAL_MILLIS);
     }
 
     public void setUpdater(Updater updater){
@@ -50,71 +123,224 @@ public class MusicBandConnection implements Closeable {
     }
 
     public MusicBandResponse sendCommand(String command) throws IOException, ClassNotFoundException{
-        MusicBandRequest musicBandRequest = new MusicBandRequest();
-        musicBandRequest.username = username;
-        musicBandRequest.password = password;
-        musicBandRequest.name = command;
-        sendToServer(musicBandRequest);
-        while (true){
-            if(response != null){
-                MusicBandResponse received = response;
-                response = null;
-                return received;
-            }
-        }
+        return sendCommand(command, null, null);
     }
 
     public MusicBandResponse sendCommand(String command, String arg) throws IOException, ClassNotFoundException {
-        MusicBandRequest musicBandRequest = new MusicBandRequest();
-        musicBandRequest.username = username;
-        musicBandRequest.password = password;
-        musicBandRequest.name = command;
-        musicBandRequest.arg = arg;
-        sendToServer(musicBandRequest);
-        while (true){
-            if(response != null){
-                MusicBandResponse received = response;
-                response = null;
-                return received;
+        return sendCommand(command, arg, null);
+    }
+
+    public MusicBandResponse sendCommand(String command, String arg, MusicBand band) throws IOException, ClassNotFoundException {
+        try{
+            return sendCommandAsync(command, arg, band).get();
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response");
+        } catch (ExecutionException ex){
+            if(ex.getCause() instanceof IOException){
+                throw (IOException) ex.getCause();
             }
+            throw new IOException(ex.getCause());
         }
     }
 
-    public MusicBandResponse sendCommand(String command, String arg, MusicBand band) throws IOException, ClassNotFoundException {
+    /**
+     * sends the command without waiting for the response,
+     * responses come in the order the commands were sent
+     * @return future completed with the response, or completed exceptionally if the connection is lost
+     */
+    public CompletableFuture<MusicBandResponse> sendCommandAsync(String command, String arg, MusicBand band) throws IOException {
         MusicBandRequest musicBandRequest = new MusicBandRequest();
         musicBandRequest.username = username;
-        musicBandRequest.password = password;
+        if(command.equals("login") || command.equals("register")){
+            musicBandRequest.password = password;
+        }
+        else {
+            musicBandRequest.token = token;
+        }
         musicBandRequest.name = command;
         musicBandRequest.arg = arg;
         musicBandRequest.band = band;
-        sendToServer(musicBandRequest);
-        while (true){
-            if(response != null){
-                MusicBandResponse received = response;
-                response = null;
-                return received;
-            }
+        return send(musicBandRequest);
+    }
+
+    /**
+     * sends the commands as one batch, the server executes them in order in one transaction
+     * @param commands sub-commands, only their names, arguments and bands are used
+     * @return future completed with the response whose batch field has results of the sub-commands in order
+     */
+    public CompletableFuture<MusicBandResponse> sendBatchAsync(List<MusicBandRequest> commands) throws IOException {
+        MusicBandRequest musicBandRequest = new MusicBandRequest();
+        musicBandRequest.username = username;
+        musicBandRequest.token = token;
+        musicBandRequest.name = "batch";
+        musicBandRequest.batch = commands;
+        return send(musicBandRequest);
+    }
+
+    /**
+     * replaces the filter of updates the server sends to this connection
+     * @param filter filter of updates, null subscribes to all updates
+     */
+    public CompletableFuture<MusicBandResponse> subscribeAsync(SubscriptionFilter filter) throws IOException {
+        MusicBandRequest musicBandRequest = new MusicBandRequest();
+        musicBandRequest.name = "subscribe";
+        musicBandRequest.filter = filter;
+        return send(musicBandRequest);
+    }
+
+    /**
+     * loads the collection as a stream of chunks, chunks are passed to the consumer on the reader thread as they come,
+     * updates received before the end of the stream are passed to the updater after it
+     * @param chunkConsumer receives bands of every chunk in order
+     * @return future completed with the end of the stream, it has the version of the loaded collection
+     */
+    public CompletableFuture<MusicBandResponse> loadStreamAsync(Consumer<List<MusicBand>> chunkConsumer) throws IOException {
+        MusicBandRequest musicBandRequest = new MusicBandRequest();
+        musicBandRequest.username = username;
+        musicBandRequest.token = token;
+        musicBandRequest.name = "load_stream";
+        return send(musicBandRequest, chunkConsumer);
+    }
+
+    private CompletableFuture<MusicBandResponse> send(MusicBandRequest musicBandRequest) throws IOException {
+        return send(musicBandRequest, null);
+    }
+
+    private CompletableFuture<MusicBandResponse> send(MusicBandRequest musicBandRequest,
+                                                      Consumer<List<MusicBand>> chunkConsumer) throws IOException {
+        musicBandRequest.requestId = nextRequestId();
+        musicBandRequest.timeoutMillis = REQUEST_TIMEOUT_MILLIS;
+        CompletableFuture<MusicBandResponse> future = new CompletableFuture<>();
+        pendingRequests.put(musicBandRequest.requestId, future);
+        if(chunkConsumer != null){
+            snapshotConsumers.put(musicBandRequest.requestId, chunkConsumer);
+        }
+        if(connectionError != null){
+            pendingRequests.remove(musicBandRequest.requestId);
+            snapshotConsumers.remove(musicBandRequest.requestId);
+            throw connectionError;
+        }
+        try{
+            sendToServer(musicBandRequest);
+        } catch (IOException ex){
+            pendingRequests.remove(musicBandRequest.requestId);
+            snapshotConsumers.remove(musicBandRequest.requestId);
+            throw ex;
+        }
+        return future;
+    }
+
+    /**
+     * sends an empty frame, the server answers with an empty frame and keeps the connection open
+     */
+    public void ping() throws IOException {
+        synchronized (this){
+            socket.getOutputStream().write(new byte[FrameFormat.HEADER_SIZE]);
         }
     }
 
     @Override
     public void close() throws IOException {
+        pingTimer.cancel();
         socket.close();
     }
 
+    /**
+     * @return positive id that is not used by a pending request
+     */
+    private int nextRequestId(){
+        while (true){
+            int id = nextRequestId.getAndIncrement() & Integer.MAX_VALUE;
+            if(id != 0 && !pendingRequests.containsKey(id)){
+                return id;
+            }
+        }
+    }
+
+    /**
+     * passes held updates to the updater once no snapshot is streamed,
+     * parts of them that are already in the snapshot are skipped
+     * @param snapshotVersion version of the snapshot that has just ended
+     */
+    private void releaseHeldUpdates(long snapshotVersion){
+        if(!snapshotConsumers.isEmpty()){
+            return;
+        }
+        for(MusicBandResponse update: heldUpdates){
+            MusicBandResponse newer = newerThan(update, snapshotVersion);
+            if(newer != null && updater != null){
+                updater.update(newer);
+            }
+        }
+        heldUpdates.clear();
+    }
+
+    /**
+     * @return the update without parts that are not newer than the version, or null if nothing is left
+     */
+    private static MusicBandResponse newerThan(MusicBandResponse update, long version){
+        if(update.status == ResponseStatus.RESYNC_REQUIRED){
+            return update;
+        }
+        if(update.status != ResponseStatus.UPDATE_BATCH){
+            return update.version > version ? update : null;
+        }
+        List<MusicBandResponse> batch = new ArrayList<>();
+        for(MusicBandResponse subUpdate: update.batch){
+            MusicBandResponse newer = newerThan(subUpdate, version);
+            if(newer != null){
+                batch.add(newer);
+            }
+        }
+        if(batch.isEmpty()){
+            return null;
+        }
+        MusicBandResponse newer = new MusicBandResponse();
+        newer.status = update.status;
+        newer.version = update.version;
+        newer.batch = batch;
+        return newer;
+    }
+
+    private void failPendingRequests(IOException cause){
+        connectionError = cause;
+        snapshotConsumers.clear();
+        for(Integer id: pendingRequests.keySet()){
+            CompletableFuture<MusicBandResponse> future = pendingRequests.remove(id);
+            if(future != null){
+                future.completeExceptionally(cause);
+            }
+        }
+    }
     private void sendToServer(MusicBandRequest musicBandRequest) throws IOException {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        ObjectOutputStream ous = new ObjectOutputStream(byteArrayOutputStream);
-        ous.writeObject(musicBandRequest);
-        ous.flush();
+        byteArrayOutputStream.write(new byte[FrameFormat.HEADER_SIZE]);
+        Codecs.encodeRequest(codec, musicBandRequest, byteArrayOutputStream);
         byte[] byteArray = byteArrayOutputStream.toByteArray();
-        DataOutputStream dataOutputStream = new DataOutputStream(socket.getOutputStream());
-        dataOutputStream.write(byteArray);
+        int length = byteArray.length - FrameFormat.HEADER_SIZE;
+        byteArray[0] = (byte) (length >>> 24);
+        byteArray[1] = (byte) (length >>> 16);
+        byteArray[2] = (byte) (length >>> 8);
+        byteArray[3] = (byte) length;
+        synchronized (this){
+            socket.getOutputStream().write(byteArray);
+        }
     }
 
+    /**
+     * @return next response or null if the server answered a ping
+     */
     private MusicBandResponse getResponse() throws IOException, ClassNotFoundException {
-        DataInputStream dataInputStream = new DataInputStream(socket.getInputStream());
-        ObjectInputStream objectInputStream = new ObjectInputStream(dataInputStream);
-        return (MusicBandResponse) objectInputStream.readObject();
+        int length = inputStream.readInt();
+        if(length < 0 || length > FrameFormat.MAX_FRAME_SIZE){
+            throw new IOException("Incorrect frame length " + length);
+        }
+        if(length == 0){
+            return null;
+        }
+        byte[] frame = new byte[length];
+        inputStream.readFully(frame);
+        return Codecs.decodeResponse(ByteBuffer.wrap(frame));
     }
 }
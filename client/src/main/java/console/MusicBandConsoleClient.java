@@ -80,6 +80,7 @@ public class MusicBandConsoleClient {
                     System.out.println("help : вывести справку по доступным командам\n" +
                             "info : вывести в стандартный поток вывода информацию о коллекции (тип, дата инициализации, количество элементов и т.д.)\n" +
                             "show : вывести в стандартный поток вывода все элементы коллекции в строковом представлении\n" +
+                            "show_mine : вывести элементы коллекции, принадлежащие пользователю\n" +
                             "add {element} : добавить новый элемент в коллекцию\n" +
                             "update id {element} : обновить значение элемента коллекции, id которого равен заданному\n" +
                             "remove_by_id id : удалить элемент из коллекции по его id\n" +
@@ -111,7 +112,7 @@ public class MusicBandConsoleClient {
                     break;
                 }
                 else if(command.equals("info") || command.equals("show") ||
-                        command.equals("clear")|| command.equals("print_descending")){
+                        command.equals("clear")|| command.equals("print_descending") || command.equals("show_mine")){
                     System.out.println(connection.sendCommand(command).response);
                 }
                 else if(command.equals("remove_by_id") || command.equals("count_less_than_genre")
@@ -1,14 +1,30 @@
 package console.util.scriptexecution;
 
 import collectionitems.WrongArgumentException;
+import collectionitems.MusicBand;
 import connection.MusicBandConnection;
+import connection.MusicBandRequest;
+import connection.MusicBandResponse;
 import console.input.BandCreator;
 import console.input.EndOfInputException;
 import console.input.InputSource;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Executes commands from a script file. Consecutive server commands are sent as batches without waiting for responses,
+ * responses are printed in the order of commands before any local output and at the end of the script
+ */
 public class ScriptExecutor {
+    /**
+     * max amount of commands sent in one batch
+     */
+    private static final int BATCH_SIZE = 500;
+
     public static void executeScript(MusicBandConnection connection, File scriptFile)
             throws FileNotFoundException, ReadingScriptFileException, EndOfInputException,
             ClassNotFoundException {
@@ -21,6 +37,8 @@ public class ScriptExecutor {
             throw new ReadingScriptFileException();
         }
         BandCreator bandCreator = new BandCreator(inputSource);
+        List<MusicBandRequest> batch = new ArrayList<>();
+        List<CompletableFuture<MusicBandResponse>> pendingResponses = new ArrayList<>();
         while (true){
             try {
                 String command = reader.readLine();
@@ -33,10 +51,16 @@ public class ScriptExecutor {
                     }
                     command = command.trim();
 
+                    if(!isServerCommand(command, argument)){
+                        sendBatch(connection, batch, pendingResponses);
+                        printResponses(pendingResponses);
+                    }
+
                     if(command.equals("help")){
                         System.out.println("help : вывести справку по доступным командам\n" +
                                 "info : вывести в стандартный поток вывода информацию о коллекции (тип, дата инициализации, количество элементов и т.д.)\n" +
                                 "show : вывести в стандартный поток вывода все элементы коллекции в строковом представлении\n" +
+                                "show_mine : вывести элементы коллекции, принадлежащие пользователю\n" +
                                 "add {element} : добавить новый элемент в коллекцию\n" +
                                 "update id {element} : обновить значение элемента коллекции, id которого равен заданному\n" +
                                 "remove_by_id id : удалить элемент из коллекции по его id\n" +
@@ -55,8 +79,8 @@ public class ScriptExecutor {
                         break;
                     }
                     else if(command.equals("info") || command.equals("show") ||
-                            command.equals("clear")|| command.equals("print_descending")){
-                        System.out.println(connection.sendCommand(command).response);
+                            command.equals("clear")|| command.equals("print_descending") || command.equals("show_mine")){
+                        addToBatch(connection, batch, pendingResponses, command, null, null);
                     }
                     else if(command.equals("remove_by_id") || command.equals("count_less_than_genre")
                             || command.equals("filter_starts_with_description")){
@@ -64,17 +88,17 @@ public class ScriptExecutor {
                             System.out.println("This command needs an argument");
                             continue;
                         }
-                        System.out.println(connection.sendCommand(command, argument).response);
+                        addToBatch(connection, batch, pendingResponses, command, argument, null);
                     }
                     else if(command.equals("add") || command.equals("add_if_max") || command.equals("add_if_min")){
-                        System.out.println(connection.sendCommand(command, null, bandCreator.createBand()).response);
+                        addToBatch(connection, batch, pendingResponses, command, null, bandCreator.createBand());
                     }
                     else if(command.equals("update") || command.equals("insert_at")){
                         if(argument == null){
                             System.out.println("This command needs an argument");
                             continue;
                         }
-                        System.out.println(connection.sendCommand(command, argument, bandCreator.createBand()).response);
+                        addToBatch(connection, batch, pendingResponses, command, argument, bandCreator.createBand());
                     }
                     else{
                         System.out.println("Unknown command");
@@ -88,5 +112,78 @@ public class ScriptExecutor {
                 throw new ReadingScriptFileException();
             }
         }
+        try {
+            sendBatch(connection, batch, pendingResponses);
+            printResponses(pendingResponses);
+        }
+        catch (IOException ex){
+            throw new ReadingScriptFileException();
+        }
+    }
+
+    /**
+     * @return true if the line is sent to the server and prints nothing locally
+     */
+    private static boolean isServerCommand(String command, String argument){
+        switch (command){
+            case "info": case "show": case "clear": case "print_descending": case "show_mine":
+            case "add": case "add_if_max": case "add_if_min":
+                return true;
+            case "remove_by_id": case "count_less_than_genre": case "filter_starts_with_description":
+            case "update": case "insert_at":
+                return argument != null;
+            default:
+                return false;
+        }
+    }
+
+    private static void addToBatch(MusicBandConnection connection, List<MusicBandRequest> batch,
+                                   List<CompletableFuture<MusicBandResponse>> pendingResponses,
+                                   String command, String argument, MusicBand band) throws IOException {
+        MusicBandRequest request = new MusicBandRequest();
+        request.name = command;
+        request.arg = argument;
+        request.band = band;
+        batch.add(request);
+        if(batch.size() >= BATCH_SIZE){
+            sendBatch(connection, batch, pendingResponses);
+        }
+    }
+
+    private static void sendBatch(MusicBandConnection connection, List<MusicBandRequest> batch,
+                                  List<CompletableFuture<MusicBandResponse>> pendingResponses) throws IOException {
+        if(batch.isEmpty()){
+            return;
+        }
+        pendingResponses.add(connection.sendBatchAsync(new ArrayList<>(batch)));
+        batch.clear();
+    }
+
+    /**
+     * waits for the pending batches and prints results of their commands in order
+     */
+    private static void printResponses(List<CompletableFuture<MusicBandResponse>> pendingResponses) throws IOException {
+        try {
+            for(CompletableFuture<MusicBandResponse> future: pendingResponses){
+                MusicBandResponse response = future.get();
+                if(response.batch == null){
+                    System.out.println(response.response);
+                    continue;
+                }
+                for(MusicBandResponse result: response.batch){
+                    System.out.println(result.response);
+                }
+            }
+        }
+        catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException ex){
+            throw new IOException(ex.getCause());
+        }
+        finally {
+            pendingResponses.clear();
+        }
     }
 }
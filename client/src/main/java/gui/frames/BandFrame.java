@@ -341,7 +341,7 @@ public class BandFrame extends JFrame implements ActionListener {
                     case ADD_IF_MIN: response = connection.sendCommand("insert_if_min", null, band); break;
                 }
                 assert response != null;
-                if (response.status == ResponseStatus.FAIL){
+                if (response.status != ResponseStatus.SUCCESS){
                     JOptionPane.showMessageDialog(null, "Execution failed. Answer from the server: " + response.response);
                 }
             } catch (IOException ex) {
@@ -3,6 +3,7 @@ package gui.frames;
 import collectionitems.MusicBand;
 import collectionitems.WrongArgumentException;
 import connection.MusicBandConnection;
+import connection.MusicBandRequest;
 import connection.MusicBandResponse;
 import connection.ResponseStatus;
 import console.input.EndOfInputException;
@@ -22,6 +23,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class CollectionFrame extends JFrame {
     private JPanel mainPanel = new JPanel();
@@ -46,6 +48,10 @@ public class CollectionFrame extends JFrame {
 
     private final MusicBandConnection connection;
     private List<MusicBand> bands;
+    /**
+     * version of the collection on the server that the shown bands correspond to
+     */
+    private volatile long version;
 
     private List<MusicBandLabel> bandsLabels = new ArrayList<>();
     private MusicBandTableModel tableModel;
@@ -211,7 +217,7 @@ public class CollectionFrame extends JFrame {
 
         //functionality
         this.connection = connection;
-        bands = connection.sendCommand("load").musicBandList;
+        bands = new ArrayList<>();
         tableModel = new MusicBandTableModel(bands);
         collectionTable = new JTable(tableModel);
         TableRowSorter tableRowSorter = new TableRowSorter(tableModel);
@@ -262,20 +268,33 @@ public class CollectionFrame extends JFrame {
             tableRowSorter.setRowFilter(new DescriptionRowFilter(descriptionStart));
         });
         deleteButton.addActionListener(e -> {
-            int row = collectionTable.getSelectedRow();
-            int id = (int) tableModel.getValueAt(row, 0);
+            List<MusicBandRequest> removals = new ArrayList<>();
+            for(int row: collectionTable.getSelectedRows()){
+                MusicBandRequest removal = new MusicBandRequest();
+                removal.name = "remove_by_id";
+                removal.arg = "" + collectionTable.getValueAt(row, 0);
+                removals.add(removal);
+            }
+            if(removals.isEmpty()){
+                return;
+            }
             try {
-                MusicBandResponse response = connection.sendCommand("remove_by_id", "" + id);
-                if(response.status == ResponseStatus.FAIL){
-                    JOptionPane.showMessageDialog(null, response.response);
-                }
-            } catch (IOException | ClassNotFoundException ex) {
+                connection.sendBatchAsync(removals).thenAccept(response -> {
+                    String failures = response.batch == null ? response.response : response.batch.stream()
+                            .filter(r -> r.status != ResponseStatus.SUCCESS)
+                            .map(r -> r.response).distinct().collect(Collectors.joining("\n"));
+                    if(!failures.isEmpty()){
+                        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, failures));
+                    }
+                });
+            } catch (IOException ex) {
                 JOptionPane.showMessageDialog(null, "NoConnection");
                 System.exit(0);
             }
         });
 
-        connection.setUpdater(this::update);
+        // the connection calls back on its reader thread, the model and the labels are changed on the event thread
+        connection.setUpdater(updateResponse -> SwingUtilities.invokeLater(() -> update(updateResponse)));
 
         addButton.addActionListener(e -> new BandFrame("Add New Band", connection, BandFormType.ADD).setVisible(true));
         editButton.addActionListener(e -> {
@@ -305,15 +324,96 @@ public class CollectionFrame extends JFrame {
         countLesserButton.addActionListener(e -> new CountLesserGenreFrame("Count Lesser Genre", connection).setVisible(true));
 
         middlePanel.setLayout(null);
-        for(MusicBand b: bands){
-            System.out.println(middlePanel.getSize());
+        connection.loadStreamAsync(chunk -> SwingUtilities.invokeLater(() -> addChunk(chunk)))
+                .thenAccept(response -> SwingUtilities.invokeLater(() -> {
+                    if(response.status == ResponseStatus.SUCCESS){
+                        version = response.version;
+                    }
+                    else {
+                        JOptionPane.showMessageDialog(null, response.response);
+                    }
+                }));
+    }
+
+    /**
+     * shows the next chunk of the loaded collection, rows are shown before the rest of the collection comes.
+     * Runs on the event thread
+     */
+    private void addChunk(List<MusicBand> chunk){
+        int firstRow = bands.size();
+        for(MusicBand b: chunk){
+            bands.add(b);
             MusicBandLabel label = new MusicBandLabel(b);
             middlePanel.add(label);
             bandsLabels.add(label);
         }
+        if(!chunk.isEmpty()){
+            tableModel.fireTableRowsInserted(firstRow, bands.size() - 1);
+        }
+        middlePanel.revalidate();
+        middlePanel.repaint();
     }
 
     private void update(MusicBandResponse updateResponse){
+        if(updateResponse.status == ResponseStatus.RESYNC_REQUIRED){
+            resync();
+            return;
+        }
+        applyUpdate(updateResponse);
+        tableModel.fireTableDataChanged();
+        middlePanel.revalidate();
+        middlePanel.repaint();
+    }
+
+    /**
+     * loads changes missed since the shown version, the server stops sending updates to a lagging client until then
+     */
+    private void resync(){
+        try {
+            connection.sendCommandAsync("load_since", "" + version, null)
+                    .thenAccept(response -> SwingUtilities.invokeLater(() -> applyResync(response)));
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(null, "ConnectionLost");
+        }
+    }
+
+    /**
+     * applies the response of load_since, runs on the event thread
+     */
+    private void applyResync(MusicBandResponse response){
+        if(response.status != ResponseStatus.SUCCESS){
+            return;
+        }
+        if(response.batch != null){
+            for(MusicBandResponse change: response.batch){
+                applyUpdate(change);
+            }
+        }
+        else {
+            bands.clear();
+            bandsLabels.forEach(middlePanel::remove);
+            bandsLabels.clear();
+            MusicBandResponse added = new MusicBandResponse();
+            added.status = ResponseStatus.UPDATE_ADD;
+            added.musicBandList = response.musicBandList;
+            applyUpdate(added);
+        }
+        version = response.version;
+        tableModel.fireTableDataChanged();
+        middlePanel.revalidate();
+        middlePanel.repaint();
+    }
+
+    /**
+     * changes the shown bands without refreshing the table, combined updates are applied as a whole
+     */
+    private void applyUpdate(MusicBandResponse updateResponse){
+        if(updateResponse.status == ResponseStatus.UPDATE_BATCH){
+            for(MusicBandResponse update: updateResponse.batch){
+                applyUpdate(update);
+            }
+            return;
+        }
         if(updateResponse.status == ResponseStatus.UPDATE_DELETE){
             for (int id: updateResponse.ids){
                 for(int i = 0; i < bands.size(); i++){
@@ -346,46 +446,63 @@ public class CollectionFrame extends JFrame {
         }
         if(updateResponse.status == ResponseStatus.UPDATE_ADD){
             for (MusicBand band: updateResponse.musicBandList){
-                bands.add(band);
-                MusicBandLabel label = new MusicBandLabel(band);
-                middlePanel.add(label);
-                bandsLabels.add(label);
+                if(!replaceBand(band)){
+                    bands.add(band);
+                    MusicBandLabel label = new MusicBandLabel(band);
+                    middlePanel.add(label);
+                    bandsLabels.add(label);
+                }
             }
             middlePanel.revalidate();
             middlePanel.repaint();
         }
         if(updateResponse.status == ResponseStatus.UPDATE_UPDATE){
-            MusicBand updated = updateResponse.musicBandList.get(0);
-            for(MusicBand b: bands){
-                if(b.getId() == updated.getId()){
-                    try {
-                        b.setName(updated.getName());
-                        b.setCoordinates(updated.getCoordinates());
-                        b.setCreationDate(updated.getCreationDate());
-                        b.setNumberOfParticipants(updated.getNumberOfParticipants());
-                        b.setAlbumsCount(updated.getAlbumsCount());
-                        b.setDescription(updated.getDescription());
-                        b.setGenre(updated.getGenre());
-                        b.setBestAlbum(updated.getBestAlbum());
-                    } catch (WrongArgumentException e) {
-                        throw new RuntimeException(e);
-                    }
-                    break;
-                }
+            for (MusicBand updated: updateResponse.musicBandList){
+                replaceBand(updated);
             }
-            bandsLabels.removeIf(l -> {
-                if(l.getId() == updated.getId()){
-                    middlePanel.remove(l);
-                    return true;
+        }
+        if(updateResponse.version > version){
+            version = updateResponse.version;
+        }
+    }
+
+    /**
+     * replaces the shown band with the same id
+     * @return false if there is no such band
+     */
+    private boolean replaceBand(MusicBand updated){
+        boolean found = false;
+        for(MusicBand b: bands){
+            if(b.getId() == updated.getId()){
+                try {
+                    b.setName(updated.getName());
+                    b.setCoordinates(updated.getCoordinates());
+                    b.setCreationDate(updated.getCreationDate());
+                    b.setNumberOfParticipants(updated.getNumberOfParticipants());
+                    b.setAlbumsCount(updated.getAlbumsCount());
+                    b.setDescription(updated.getDescription());
+                    b.setGenre(updated.getGenre());
+                    b.setBestAlbum(updated.getBestAlbum());
+                } catch (WrongArgumentException e) {
+                    throw new RuntimeException(e);
                 }
-                return false;
-            });
-            MusicBandLabel label = new MusicBandLabel(updated);
-            bandsLabels.add(label);
-            middlePanel.add(label);
+                found = true;
+                break;
+            }
         }
-        tableModel.fireTableDataChanged();
-        middlePanel.revalidate();
-        middlePanel.repaint();
+        if(!found){
+            return false;
+        }
+        bandsLabels.removeIf(l -> {
+            if(l.getId() == updated.getId()){
+                middlePanel.remove(l);
+                return true;
+            }
+            return false;
+        });
+        MusicBandLabel label = new MusicBandLabel(updated);
+        bandsLabels.add(label);
+        middlePanel.add(label);
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -122,7 +122,7 @@ public class LoginFrame extends JFrame {
             connection.setPassword(password);
             try {
                 MusicBandResponse response = connection.sendCommand("login");
-                if(response.status == ResponseStatus.FAIL){
+                if(response.status != ResponseStatus.SUCCESS){
                     serverResponseLabel.setText("AuthorizationFail");
                 }
                 else{
@@ -0,0 +1,462 @@
+package codec;
+
+import collectionitems.Album;
+import collectionitems.Coordinates;
+import collectionitems.MusicBand;
+import collectionitems.MusicGenre;
+import collectionitems.WrongArgumentException;
+import connection.MusicBandRequest;
+import connection.MusicBandResponse;
+import connection.ResponseStatus;
+import connection.SubscriptionFilter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Compact hand-written codec. Every object starts with a varint bitmap of its not null fields
+ * followed by the values of these fields in declaration order,
+ * integers are written as varints and enums as their ordinals
+ */
+public class BinaryCodec implements MessageCodec {
+    private static final byte ID = 1;
+
+    private static final int REQUEST_NAME = 1;
+    private static final int REQUEST_ARG = 1 << 1;
+    private static final int REQUEST_BAND = 1 << 2;
+    private static final int REQUEST_USERNAME = 1 << 3;
+    private static final int REQUEST_PASSWORD = 1 << 4;
+    private static final int REQUEST_ID = 1 << 5;
+    private static final int REQUEST_TOKEN = 1 << 6;
+    private static final int REQUEST_BATCH = 1 << 7;
+    private static final int REQUEST_FILTER = 1 << 8;
+    private static final int REQUEST_TIMEOUT = 1 << 9;
+
+    private static final int RESPONSE_STATUS = 1;
+    private static final int RESPONSE_TEXT = 1 << 1;
+    private static final int RESPONSE_BANDS = 1 << 2;
+    private static final int RESPONSE_IDS = 1 << 3;
+    private static final int RESPONSE_REQUEST_ID = 1 << 4;
+    private static final int RESPONSE_TOKEN = 1 << 5;
+    private static final int RESPONSE_BATCH = 1 << 6;
+    private static final int RESPONSE_VERSION = 1 << 7;
+
+    private static final int BAND_NAME = 1;
+    private static final int BAND_COORDINATES = 1 << 1;
+    private static final int BAND_CREATION_DATE = 1 << 2;
+    private static final int BAND_DESCRIPTION = 1 << 3;
+    private static final int BAND_GENRE = 1 << 4;
+    private static final int BAND_BEST_ALBUM = 1 << 5;
+    private static final int BAND_OWNER = 1 << 6;
+
+    private static final int FILTER_OWNER = 1;
+    private static final int FILTER_GENRE = 1 << 1;
+    private static final int FILTER_RECTANGLE = 1 << 2;
+    private static final int FILTER_IDS = 1 << 3;
+
+    private static final int ALBUM_NAME = 1;
+    private static final int ALBUM_LENGTH = 1 << 1;
+    private static final int ALBUM_SALES = 1 << 2;
+
+    private static final ResponseStatus[] STATUSES = ResponseStatus.values();
+    private static final MusicGenre[] GENRES = MusicGenre.values();
+
+    @Override
+    public byte getId(){
+        return ID;
+    }
+
+    @Override
+    public void encodeRequest(MusicBandRequest request, OutputStream out) throws IOException {
+        writeRequest(new BinaryWriter(out), request);
+    }
+
+    @Override
+    public void encodeResponse(MusicBandResponse response, OutputStream out) throws IOException {
+        writeResponse(new BinaryWriter(out), response);
+    }
+
+    @Override
+    public MusicBandRequest decodeRequest(ByteBuffer payload) throws IOException {
+        return readRequest(new BinaryReader(payload), true);
+    }
+
+    @Override
+    public MusicBandResponse decodeResponse(ByteBuffer payload) throws IOException {
+        return readResponse(new BinaryReader(payload), true);
+    }
+
+    private static void writeRequest(BinaryWriter writer, MusicBandRequest request) throws IOException {
+        int fields = 0;
+        fields |= request.name != null ? REQUEST_NAME : 0;
+        fields |= request.arg != null ? REQUEST_ARG : 0;
+        fields |= request.band != null ? REQUEST_BAND : 0;
+        fields |= request.username != null ? REQUEST_USERNAME : 0;
+        fields |= request.password != null ? REQUEST_PASSWORD : 0;
+        fields |= request.requestId != 0 ? REQUEST_ID : 0;
+        fields |= request.token != null ? REQUEST_TOKEN : 0;
+        fields |= request.batch != null ? REQUEST_BATCH : 0;
+        fields |= request.filter != null ? REQUEST_FILTER : 0;
+        fields |= request.timeoutMillis != 0 ? REQUEST_TIMEOUT : 0;
+        writer.writeVarInt(fields);
+        if(request.name != null){
+            writer.writeString(request.name);
+        }
+        if(request.arg != null){
+            writer.writeString(request.arg);
+        }
+        if(request.band != null){
+            writeBand(writer, request.band);
+        }
+        if(request.username != null){
+            writer.writeString(request.username);
+        }
+        if(request.password != null){
+            writer.writeString(request.password);
+        }
+        if(request.requestId != 0){
+            writer.writeSignedVarInt(request.requestId);
+        }
+        if(request.token != null){
+            writer.writeString(request.token);
+        }
+        if(request.batch != null){
+            writer.writeVarInt(request.batch.size());
+            for(MusicBandRequest subRequest: request.batch){
+                writeRequest(writer, subRequest);
+            }
+        }
+        if(request.filter != null){
+            writeFilter(writer, request.filter);
+        }
+        if(request.timeoutMillis != 0){
+            writer.writeVarInt(request.timeoutMillis);
+        }
+    }
+
+    private static void writeResponse(BinaryWriter writer, MusicBandResponse response) throws IOException {
+        int fields = 0;
+        fields |= response.status != null ? RESPONSE_STATUS : 0;
+        fields |= response.response != null ? RESPONSE_TEXT : 0;
+        fields |= response.musicBandList != null ? RESPONSE_BANDS : 0;
+        fields |= response.ids != null ? RESPONSE_IDS : 0;
+        fields |= response.requestId != 0 ? RESPONSE_REQUEST_ID : 0;
+        fields |= response.token != null ? RESPONSE_TOKEN : 0;
+        fields |= response.batch != null ? RESPONSE_BATCH : 0;
+        fields |= response.version != 0 ? RESPONSE_VERSION : 0;
+        writer.writeVarInt(fields);
+        if(response.status != null){
+            writer.writeVarInt(response.status.ordinal());
+        }
+        if(response.response != null){
+            writer.writeString(response.response);
+        }
+        if(response.musicBandList != null){
+            writer.writeVarInt(response.musicBandList.size());
+            for(MusicBand band: response.musicBandList){
+                writeBand(writer, band);
+            }
+        }
+        if(response.ids != null){
+            writer.writeVarInt(response.ids.size());
+            for(Integer id: response.ids){
+                writer.writeSignedVarInt(id);
+            }
+        }
+        if(response.requestId != 0){
+            writer.writeSignedVarInt(response.requestId);
+        }
+        if(response.token != null){
+            writer.writeString(response.token);
+        }
+        if(response.batch != null){
+            writer.writeVarInt(response.batch.size());
+            for(MusicBandResponse subResponse: response.batch){
+                writeResponse(writer, subResponse);
+            }
+        }
+        if(response.version != 0){
+            writer.writeVarLong(response.version);
+        }
+    }
+
+    /**
+     * @param allowBatch false for requests inside a batch, batches can not be nested
+     */
+    private static MusicBandRequest readRequest(BinaryReader reader, boolean allowBatch) throws IOException {
+        MusicBandRequest request = new MusicBandRequest();
+        int fields = reader.readVarInt();
+        if((fields & REQUEST_NAME) != 0){
+            request.name = reader.readString();
+        }
+        if((fields & REQUEST_ARG) != 0){
+            request.arg = reader.readString();
+        }
+        if((fields & REQUEST_BAND) != 0){
+            request.band = readBand(reader);
+        }
+        if((fields & REQUEST_USERNAME) != 0){
+            request.username = reader.readString();
+        }
+        if((fields & REQUEST_PASSWORD) != 0){
+            request.password = reader.readString();
+        }
+        if((fields & REQUEST_ID) != 0){
+            request.requestId = reader.readSignedVarInt();
+        }
+        if((fields & REQUEST_TOKEN) != 0){
+            request.token = reader.readString();
+        }
+        if((fields & REQUEST_BATCH) != 0){
+            if(!allowBatch){
+                throw new StreamCorruptedException("Nested batch");
+            }
+            int count = reader.readCount();
+            request.batch = new ArrayList<>(count);
+            for(int i = 0; i < count; i++){
+                request.batch.add(readRequest(reader, false));
+            }
+        }
+        if((fields & REQUEST_FILTER) != 0){
+            request.filter = readFilter(reader);
+        }
+        if((fields & REQUEST_TIMEOUT) != 0){
+            request.timeoutMillis = reader.readVarInt();
+        }
+        return request;
+    }
+
+    /**
+     * @param allowBatch false for responses inside a batch, batches can not be nested
+     */
+    private static MusicBandResponse readResponse(BinaryReader reader, boolean allowBatch) throws IOException {
+        MusicBandResponse response = new MusicBandResponse();
+        int fields = reader.readVarInt();
+        if((fields & RESPONSE_STATUS) != 0){
+            response.status = readEnum(reader, STATUSES);
+        }
+        if((fields & RESPONSE_TEXT) != 0){
+            response.response = reader.readString();
+        }
+        if((fields & RESPONSE_BANDS) != 0){
+            int count = reader.readCount();
+            response.musicBandList = new ArrayList<>(count);
+            for(int i = 0; i < count; i++){
+                response.musicBandList.add(readBand(reader));
+            }
+        }
+        if((fields & RESPONSE_IDS) != 0){
+            int count = reader.readCount();
+            List<Integer> ids = new ArrayList<>(count);
+            for(int i = 0; i < count; i++){
+                ids.add(reader.readSignedVarInt());
+            }
+            response.ids = ids;
+        }
+        if((fields & RESPONSE_REQUEST_ID) != 0){
+            response.requestId = reader.readSignedVarInt();
+        }
+        if((fields & RESPONSE_TOKEN) != 0){
+            response.token = reader.readString();
+        }
+        if((fields & RESPONSE_BATCH) != 0){
+            if(!allowBatch){
+                throw new StreamCorruptedException("Nested batch");
+            }
+            int count = reader.readCount();
+            response.batch = new ArrayList<>(count);
+            for(int i = 0; i < count; i++){
+                response.batch.add(readResponse(reader, false));
+            }
+        }
+        if((fields & RESPONSE_VERSION) != 0){
+            response.version = reader.readVarLong();
+        }
+        return response;
+    }
+
+    private static void writeBand(BinaryWriter writer, MusicBand band) throws IOException {
+        int fields = 0;
+        fields |= band.getName() != null ? BAND_NAME : 0;
+        fields |= band.getCoordinates() != null ? BAND_COORDINATES : 0;
+        fields |= band.getCreationDate() != null ? BAND_CREATION_DATE : 0;
+        fields |= band.getDescription() != null ? BAND_DESCRIPTION : 0;
+        fields |= band.getGenre() != null ? BAND_GENRE : 0;
+        fields |= band.getBestAlbum() != null ? BAND_BEST_ALBUM : 0;
+        fields |= band.getOwnerUsername() != null ? BAND_OWNER : 0;
+        writer.writeVarInt(fields);
+        writer.writeSignedVarInt(band.getId());
+        if(band.getName() != null){
+            writer.writeString(band.getName());
+        }
+        if(band.getCoordinates() != null){
+            writer.writeFloat(band.getCoordinates().getX());
+            writer.writeFloat(band.getCoordinates().getY());
+        }
+        if(band.getCreationDate() != null){
+            writer.writeSignedVarLong(band.getCreationDate().toEpochSecond(ZoneOffset.UTC));
+            writer.writeVarInt(band.getCreationDate().getNano());
+        }
+        writer.writeSignedVarInt(band.getNumberOfParticipants());
+        writer.writeSignedVarLong(band.getAlbumsCount());
+        if(band.getDescription() != null){
+            writer.writeString(band.getDescription());
+        }
+        if(band.getGenre() != null){
+            writer.writeVarInt(band.getGenre().ordinal());
+        }
+        if(band.getBestAlbum() != null){
+            writeAlbum(writer, band.getBestAlbum());
+        }
+        if(band.getOwnerUsername() != null){
+            writer.writeString(band.getOwnerUsername());
+        }
+    }
+
+    private static MusicBand readBand(BinaryReader reader) throws IOException {
+        MusicBand band = new MusicBand();
+        int fields = reader.readVarInt();
+        try{
+            band.setId(reader.readSignedVarInt());
+            if((fields & BAND_NAME) != 0){
+                band.setName(reader.readString());
+            }
+            if((fields & BAND_COORDINATES) != 0){
+                Coordinates coordinates = new Coordinates();
+                coordinates.setX(reader.readFloat());
+                coordinates.setY(reader.readFloat());
+                band.setCoordinates(coordinates);
+            }
+            else {
+                band.setCoordinates(null);
+            }
+            if((fields & BAND_CREATION_DATE) != 0){
+                long seconds = reader.readSignedVarLong();
+                int nanos = reader.readVarInt();
+                band.setCreationDate(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+            }
+            else {
+                band.setCreationDate(null);
+            }
+            band.setNumberOfParticipants(reader.readSignedVarInt());
+            band.setAlbumsCount(reader.readSignedVarLong());
+            if((fields & BAND_DESCRIPTION) != 0){
+                band.setDescription(reader.readString());
+            }
+            if((fields & BAND_GENRE) != 0){
+                band.setGenre(readEnum(reader, GENRES));
+            }
+            if((fields & BAND_BEST_ALBUM) != 0){
+                band.setBestAlbum(readAlbum(reader));
+            }
+            if((fields & BAND_OWNER) != 0){
+                band.setOwnerUsername(reader.readString());
+            }
+        } catch (WrongArgumentException | DateTimeException ex){
+            throw new StreamCorruptedException("Incorrect band: " + ex.getMessage());
+        }
+        return band;
+    }
+
+    private static void writeFilter(BinaryWriter writer, SubscriptionFilter filter) throws IOException {
+        int fields = 0;
+        fields |= filter.owner != null ? FILTER_OWNER : 0;
+        fields |= filter.genre != null ? FILTER_GENRE : 0;
+        fields |= filter.hasRectangle() ? FILTER_RECTANGLE : 0;
+        fields |= filter.ids != null ? FILTER_IDS : 0;
+        writer.writeVarInt(fields);
+        if(filter.owner != null){
+            writer.writeString(filter.owner);
+        }
+        if(filter.genre != null){
+            writer.writeVarInt(filter.genre.ordinal());
+        }
+        if(filter.hasRectangle()){
+            writer.writeFloat(filter.minX);
+            writer.writeFloat(filter.maxX);
+            writer.writeFloat(filter.minY);
+            writer.writeFloat(filter.maxY);
+        }
+        if(filter.ids != null){
+            writer.writeVarInt(filter.ids.size());
+            for(Integer id: filter.ids){
+                writer.writeSignedVarInt(id);
+            }
+        }
+    }
+
+    private static SubscriptionFilter readFilter(BinaryReader reader) throws IOException {
+        SubscriptionFilter filter = new SubscriptionFilter();
+        int fields = reader.readVarInt();
+        if((fields & FILTER_OWNER) != 0){
+            filter.owner = reader.readString();
+        }
+        if((fields & FILTER_GENRE) != 0){
+            filter.genre = readEnum(reader, GENRES);
+        }
+        if((fields & FILTER_RECTANGLE) != 0){
+            filter.minX = reader.readFloat();
+            filter.maxX = reader.readFloat();
+            filter.minY = reader.readFloat();
+            filter.maxY = reader.readFloat();
+        }
+        if((fields & FILTER_IDS) != 0){
+            int count = reader.readCount();
+            filter.ids = new HashSet<>();
+            for(int i = 0; i < count; i++){
+                filter.ids.add(reader.readSignedVarInt());
+            }
+        }
+        return filter;
+    }
+
+    private static void writeAlbum(BinaryWriter writer, Album album) throws IOException {
+        int fields = 0;
+        fields |= album.getName() != null ? ALBUM_NAME : 0;
+        fields |= album.getLength() != null ? ALBUM_LENGTH : 0;
+        fields |= album.getSales() != null ? ALBUM_SALES : 0;
+        writer.writeVarInt(fields);
+        if(album.getName() != null){
+            writer.writeString(album.getName());
+        }
+        writer.writeSignedVarLong(album.getTracks());
+        if(album.getLength() != null){
+            writer.writeSignedVarInt(album.getLength());
+        }
+        if(album.getSales() != null){
+            writer.writeFloat(album.getSales());
+        }
+    }
+
+    private static Album readAlbum(BinaryReader reader) throws IOException, WrongArgumentException {
+        Album album = new Album();
+        int fields = reader.readVarInt();
+        if((fields & ALBUM_NAME) != 0){
+            album.setName(reader.readString());
+        }
+        album.setTracks(reader.readSignedVarLong());
+        if((fields & ALBUM_LENGTH) != 0){
+            album.setLength(reader.readSignedVarInt());
+        }
+        if((fields & ALBUM_SALES) != 0){
+            album.setSales(reader.readFloat());
+        }
+        return album;
+    }
+
+    private static <T> T readEnum(BinaryReader reader, T[] values) throws IOException {
+        int ordinal = reader.readVarInt();
+        if(ordinal < 0 || ordinal >= values.length){
+            throw new StreamCorruptedException("Incorrect enum ordinal " + ordinal);
+        }
+        return values[ordinal];
+    }
+}
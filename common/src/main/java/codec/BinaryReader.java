@@ -0,0 +1,86 @@
+package codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads primitive values written by {@link BinaryWriter}
+ */
+class BinaryReader {
+    private final ByteBuffer buffer;
+
+    BinaryReader(ByteBuffer buffer){
+        this.buffer = buffer;
+    }
+
+    int readByte() throws IOException {
+        try{
+            return buffer.get() & 0xFF;
+        } catch (BufferUnderflowException ex){
+            throw new EOFException("Message ended unexpectedly");
+        }
+    }
+
+    long readVarLong() throws IOException {
+        long result = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return result;
+            }
+        }
+        throw new StreamCorruptedException("Varint is too long");
+    }
+
+    int readVarInt() throws IOException {
+        long value = readVarLong();
+        if((value & ~0xFFFFFFFFL) != 0){
+            throw new StreamCorruptedException("Varint does not fit into int");
+        }
+        return (int) value;
+    }
+
+    long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readSignedVarInt() throws IOException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    float readFloat() throws IOException {
+        try{
+            return buffer.getFloat();
+        } catch (BufferUnderflowException ex){
+            throw new EOFException("Message ended unexpectedly");
+        }
+    }
+
+    String readString() throws IOException {
+        int length = readVarInt();
+        if(length < 0 || length > buffer.remaining()){
+            throw new StreamCorruptedException("Incorrect string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * reads the amount of elements of a list, checks that it is not obviously bigger than the rest of the message
+     */
+    int readCount() throws IOException {
+        int count = readVarInt();
+        if(count < 0 || count > buffer.remaining()){
+            throw new StreamCorruptedException("Incorrect elements count " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,58 @@
+package codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes primitive values in the format of {@link BinaryCodec}.
+ * Integers are written as varints, signed integers are zigzag encoded first
+ */
+class BinaryWriter {
+    private final OutputStream out;
+
+    BinaryWriter(OutputStream out){
+        this.out = out;
+    }
+
+    void writeByte(int value) throws IOException {
+        out.write(value);
+    }
+
+    void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0){
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    void writeVarInt(int value) throws IOException {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    void writeSignedVarLong(long value) throws IOException {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeSignedVarInt(int value) throws IOException {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    void writeFloat(float value) throws IOException {
+        int bits = Float.floatToIntBits(value);
+        out.write(bits >>> 24);
+        out.write(bits >>> 16);
+        out.write(bits >>> 8);
+        out.write(bits);
+    }
+
+    /**
+     * writes utf-8 bytes of a not null string prefixed with their amount
+     */
+    void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+}
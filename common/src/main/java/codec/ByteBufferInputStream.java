@@ -0,0 +1,41 @@
+package codec;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream that reads remaining bytes of a buffer without copying them
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    public ByteBufferInputStream(ByteBuffer buffer){
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read(){
+        if(!buffer.hasRemaining()){
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length){
+        if(length == 0){
+            return 0;
+        }
+        if(!buffer.hasRemaining()){
+            return -1;
+        }
+        int read = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, read);
+        return read;
+    }
+
+    @Override
+    public int available(){
+        return buffer.remaining();
+    }
+}
@@ -0,0 +1,75 @@
+package codec;
+
+import connection.MusicBandRequest;
+import connection.MusicBandResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Known codecs. Every payload starts with the id of its codec,
+ * so a receiver can decode messages of any known codec
+ */
+public final class Codecs {
+    public static final MessageCodec SERIALIZATION = new SerializationCodec();
+    public static final MessageCodec BINARY = new BinaryCodec();
+
+    private Codecs(){
+    }
+
+    /**
+     * @param name name of the codec, "binary" or "serialization"
+     * @throws IllegalArgumentException unknown name
+     */
+    public static MessageCodec forName(String name){
+        switch (name){
+            case "binary": return BINARY;
+            case "serialization": return SERIALIZATION;
+            default: throw new IllegalArgumentException("Unknown codec " + name);
+        }
+    }
+
+    /**
+     * @throws IOException unknown id
+     */
+    public static MessageCodec forId(byte id) throws IOException {
+        if(id == BINARY.getId()){
+            return BINARY;
+        }
+        if(id == SERIALIZATION.getId()){
+            return SERIALIZATION;
+        }
+        throw new IOException("Unknown codec id " + id);
+    }
+
+    /**
+     * writes the id of the codec followed by the encoded request
+     */
+    public static void encodeRequest(MessageCodec codec, MusicBandRequest request, OutputStream out) throws IOException {
+        out.write(codec.getId());
+        codec.encodeRequest(request, out);
+    }
+
+    /**
+     * writes the id of the codec followed by the encoded response
+     */
+    public static void encodeResponse(MessageCodec codec, MusicBandResponse response, OutputStream out) throws IOException {
+        out.write(codec.getId());
+        codec.encodeResponse(response, out);
+    }
+
+    /**
+     * decodes a request encoded by any known codec
+     */
+    public static MusicBandRequest decodeRequest(ByteBuffer payload) throws IOException {
+        return forId(payload.get()).decodeRequest(payload);
+    }
+
+    /**
+     * decodes a response encoded by any known codec
+     */
+    public static MusicBandResponse decodeResponse(ByteBuffer payload) throws IOException {
+        return forId(payload.get()).decodeResponse(payload);
+    }
+}
@@ -0,0 +1,35 @@
+package codec;
+
+import connection.MusicBandRequest;
+import connection.MusicBandResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts requests and responses to bytes and back.
+ * Payload of every frame starts with the id of the codec that encoded it, see {@link Codecs}
+ */
+public interface MessageCodec {
+    /**
+     * @return id of the codec written in front of every payload
+     */
+    byte getId();
+
+    void encodeRequest(MusicBandRequest request, OutputStream out) throws IOException;
+
+    void encodeResponse(MusicBandResponse response, OutputStream out) throws IOException;
+
+    /**
+     * @param payload bytes of one message without the codec id, position is moved to the end of the message
+     * @throws IOException bytes do not contain a valid request
+     */
+    MusicBandRequest decodeRequest(ByteBuffer payload) throws IOException;
+
+    /**
+     * @param payload bytes of one message without the codec id, position is moved to the end of the message
+     * @throws IOException bytes do not contain a valid response
+     */
+    MusicBandResponse decodeResponse(ByteBuffer payload) throws IOException;
+}
@@ -0,0 +1,62 @@
+package codec;
+
+import connection.MusicBandRequest;
+import connection.MusicBandResponse;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec based on java serialization, kept for compatibility
+ */
+public class SerializationCodec implements MessageCodec {
+    private static final byte ID = 0;
+
+    @Override
+    public byte getId(){
+        return ID;
+    }
+
+    @Override
+    public void encodeRequest(MusicBandRequest request, OutputStream out) throws IOException {
+        writeObject(request, out);
+    }
+
+    @Override
+    public void encodeResponse(MusicBandResponse response, OutputStream out) throws IOException {
+        writeObject(response, out);
+    }
+
+    @Override
+    public MusicBandRequest decodeRequest(ByteBuffer payload) throws IOException {
+        return readObject(payload, MusicBandRequest.class);
+    }
+
+    @Override
+    public MusicBandResponse decodeResponse(ByteBuffer payload) throws IOException {
+        return readObject(payload, MusicBandResponse.class);
+    }
+
+    private static void writeObject(Object object, OutputStream out) throws IOException {
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
+        objectOutputStream.writeObject(object);
+        objectOutputStream.flush();
+    }
+
+    private static <T> T readObject(ByteBuffer payload, Class<T> type) throws IOException {
+        ObjectInputStream objectInputStream = new ObjectInputStream(new ByteBufferInputStream(payload));
+        try{
+            Object object = objectInputStream.readObject();
+            if(!type.isInstance(object)){
+                throw new InvalidObjectException("Expected " + type.getSimpleName());
+            }
+            return type.cast(object);
+        } catch (ClassNotFoundException ex){
+            throw new InvalidObjectException("Unknown class " + ex.getMessage());
+        }
+    }
+}
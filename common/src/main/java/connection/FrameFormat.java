@@ -0,0 +1,21 @@
+package connection;
+
+/**
+ * Describes how messages are framed on the wire.
+ * Every message is sent as a 4-byte big-endian payload length followed by the payload itself.
+ * Payload starts with the id of the codec that encoded the message, see {@link codec.Codecs}.
+ * A frame with empty payload is a ping, the server answers it with an empty frame
+ */
+public final class FrameFormat {
+    /**
+     * size of the length header in bytes
+     */
+    public static final int HEADER_SIZE = 4;
+    /**
+     * max allowed payload size, frames that declare a bigger length are treated as a protocol error
+     */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private FrameFormat(){
+    }
+}
@@ -3,6 +3,7 @@ package connection;
 import collectionitems.MusicBand;
 
 import java.io.Serializable;
+import java.util.List;
 
 public class MusicBandRequest implements Serializable {
     public String name = null;
@@ -10,8 +11,33 @@ public class MusicBandRequest implements Serializable {
     public MusicBand band = null;
     public String username = null;
     public String password = null;
+    /**
+     * id chosen by the client, the response to the request carries the same id
+     */
+    public int requestId = 0;
+    /**
+     * session token received on login or register, requests other than login and register are authenticated by it
+     */
+    public String token = null;
+    /**
+     * sub-commands of the batch request, they are executed in order as one transaction
+     */
+    public List<MusicBandRequest> batch = null;
+    /**
+     * filter of the subscribe request, null subscribes to all updates
+     */
+    public SubscriptionFilter filter = null;
+    /**
+     * time in milliseconds after which the client does not wait for the response any more, 0 if it waits forever.
+     * The server does not start the request after this time and answers with {@link ResponseStatus#EXPIRED}
+     */
+    public int timeoutMillis = 0;
+    /**
+     * {@link System#nanoTime()} when the server read the request, set by the server and never sent
+     */
+    public transient long receivedAt = 0;
 
     public String toString(){
-        return "Command: " + "name = " + name + " arg = " + arg + " band = " + band;
+        return "Command: " + "id = " + requestId + " name = " + name + " arg = " + arg + " band = " + band;
     }
 }
@@ -10,4 +10,25 @@ public class MusicBandResponse implements Serializable {
     public String response = null;
     public List<MusicBand> musicBandList = null;
     public List<Integer> ids = null;
+    /**
+     * id of the request this response answers, 0 for updates that are not answers to a request
+     */
+    public int requestId = 0;
+    /**
+     * session token issued by login and register
+     */
+    public String token = null;
+    /**
+     * results of the sub-commands of a batch request, or the updates combined into one UPDATE_BATCH update
+     */
+    public List<MusicBandResponse> batch = null;
+    /**
+     * version of the collection after the change for updates, version of the sent state for load and load_since
+     */
+    public long version = 0;
+    /**
+     * for UPDATE_UPDATE updates, states of the bands of musicBandList right before the change in the same order,
+     * used by the server to find subscribers the changed bands leave, never sent
+     */
+    public transient List<MusicBand> previousBands = null;
 }
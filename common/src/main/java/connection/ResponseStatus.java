@@ -1,5 +1,5 @@
 package connection;
 
 public enum ResponseStatus {
-    SUCCESS, FAIL, UPDATE_DELETE, UPDATE_UPDATE, UPDATE_ADD, UPDATE_CLEAR
+    SUCCESS, FAIL, UPDATE_DELETE, UPDATE_UPDATE, UPDATE_ADD, UPDATE_CLEAR, UPDATE_BATCH, RESYNC_REQUIRED, SNAPSHOT_CHUNK, EXPIRED, OVERLOADED
 }
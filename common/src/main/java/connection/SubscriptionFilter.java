@@ -0,0 +1,61 @@
+package connection;
+
+import collectionitems.MusicBand;
+import collectionitems.MusicGenre;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * Filter of a subscription to collection updates. Set fields are combined with "and",
+ * a filter without set fields matches every band
+ */
+public class SubscriptionFilter implements Serializable {
+    public String owner = null;
+    public MusicGenre genre = null;
+    /**
+     * bounds of the coordinate rectangle, inclusive, the rectangle is used if all four bounds are set
+     */
+    public Float minX = null;
+    public Float maxX = null;
+    public Float minY = null;
+    public Float maxY = null;
+    public Set<Integer> ids = null;
+
+    public boolean hasRectangle(){
+        return minX != null && maxX != null && minY != null && maxY != null;
+    }
+
+    /**
+     * @return true if the filter matches every band
+     */
+    public boolean isEmpty(){
+        return owner == null && genre == null && ids == null && !hasRectangle();
+    }
+
+    public boolean matches(MusicBand band){
+        if(owner != null && !owner.equals(band.getOwnerUsername())){
+            return false;
+        }
+        if(genre != null && genre != band.getGenre()){
+            return false;
+        }
+        if(ids != null && !ids.contains(band.getId())){
+            return false;
+        }
+        if(hasRectangle()){
+            if(band.getCoordinates() == null || band.getCoordinates().getX() == null){
+                return false;
+            }
+            float x = band.getCoordinates().getX();
+            float y = band.getCoordinates().getY();
+            return x >= minX && x <= maxX && y >= minY && y <= maxY;
+        }
+        return true;
+    }
+
+    public String toString(){
+        return "Filter: owner = " + owner + " genre = " + genre + " x = [" + minX + ", " + maxX + "] y = ["
+                + minY + ", " + maxY + "] ids = " + ids;
+    }
+}
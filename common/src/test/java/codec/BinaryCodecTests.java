@@ -0,0 +1,208 @@
+package codec;
+
+import collectionitems.*;
+import connection.MusicBandRequest;
+import connection.MusicBandResponse;
+import connection.ResponseStatus;
+import connection.SubscriptionFilter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class BinaryCodecTests {
+
+    @Test
+    public void testRequestRoundTrip(){
+        try{
+            MusicBandRequest request = new MusicBandRequest();
+            request.name = "update";
+            request.arg = "12";
+            request.band = fullBand();
+            request.username = "user";
+            request.requestId = 70000;
+            request.timeoutMillis = 1500;
+            request.receivedAt = 5;
+            MusicBandRequest decoded = Codecs.decodeRequest(encode(request, Codecs.BINARY));
+            assertEquals(request.name, decoded.name);
+            assertEquals(request.arg, decoded.arg);
+            assertEquals(request.band, decoded.band);
+            assertEquals(request.band.getId(), decoded.band.getId());
+            assertEquals(request.band.getCreationDate(), decoded.band.getCreationDate());
+            assertEquals(request.band.getOwnerUsername(), decoded.band.getOwnerUsername());
+            assertEquals(request.username, decoded.username);
+            assertNull(decoded.password);
+            assertEquals(request.requestId, decoded.requestId);
+            assertEquals(request.timeoutMillis, decoded.timeoutMillis);
+            assertEquals(0, decoded.receivedAt);
+        }
+        catch (IOException | WrongArgumentException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testResponseRoundTrip(){
+        try{
+            MusicBandResponse response = new MusicBandResponse();
+            response.status = ResponseStatus.UPDATE_DELETE;
+            response.musicBandList = new ArrayList<>(Arrays.asList(fullBand(), new MusicBand()));
+            response.ids = new ArrayList<>(Arrays.asList(1, 300, -5));
+            response.requestId = 3;
+            MusicBandResponse decoded = Codecs.decodeResponse(encode(response, Codecs.BINARY));
+            assertEquals(response.status, decoded.status);
+            assertNull(decoded.response);
+            assertEquals(response.musicBandList, decoded.musicBandList);
+            assertEquals(response.ids, decoded.ids);
+            assertEquals(response.requestId, decoded.requestId);
+        }
+        catch (IOException | WrongArgumentException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanSerialization(){
+        try{
+            MusicBandResponse response = new MusicBandResponse();
+            response.status = ResponseStatus.UPDATE_ADD;
+            response.musicBandList = new ArrayList<>();
+            response.musicBandList.add(fullBand());
+            int binary = encode(response, Codecs.BINARY).remaining();
+            int serialization = encode(response, Codecs.SERIALIZATION).remaining();
+            assertTrue(binary * 5 < serialization);
+            assertEquals(response.musicBandList, Codecs.decodeResponse(encode(response, Codecs.SERIALIZATION)).musicBandList);
+        }
+        catch (IOException | WrongArgumentException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testBatchRoundTrip(){
+        try{
+            MusicBandRequest add = new MusicBandRequest();
+            add.name = "add";
+            add.band = fullBand();
+            MusicBandRequest remove = new MusicBandRequest();
+            remove.name = "remove_by_id";
+            remove.arg = "5";
+            MusicBandRequest batch = new MusicBandRequest();
+            batch.name = "batch";
+            batch.batch = new ArrayList<>(Arrays.asList(add, remove));
+            MusicBandRequest decoded = Codecs.decodeRequest(encode(batch, Codecs.BINARY));
+            assertEquals(2, decoded.batch.size());
+            assertEquals(add.band, decoded.batch.get(0).band);
+            assertEquals(remove.arg, decoded.batch.get(1).arg);
+            assertNull(decoded.batch.get(1).batch);
+
+            MusicBandResponse result = new MusicBandResponse();
+            result.status = ResponseStatus.FAIL;
+            result.response = "no element with such id";
+            MusicBandResponse response = new MusicBandResponse();
+            response.status = ResponseStatus.SUCCESS;
+            response.batch = new ArrayList<>(Arrays.asList(new MusicBandResponse(), result));
+            MusicBandResponse decodedResponse = Codecs.decodeResponse(encode(response, Codecs.BINARY));
+            assertEquals(2, decodedResponse.batch.size());
+            assertEquals(result.status, decodedResponse.batch.get(1).status);
+            assertEquals(result.response, decodedResponse.batch.get(1).response);
+        }
+        catch (IOException | WrongArgumentException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNestedBatch() throws IOException {
+        MusicBandRequest inner = new MusicBandRequest();
+        inner.batch = new ArrayList<>();
+        MusicBandRequest outer = new MusicBandRequest();
+        outer.batch = new ArrayList<>(Arrays.asList(inner));
+        Codecs.decodeRequest(encode(outer, Codecs.BINARY));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedMessage() throws IOException, WrongArgumentException {
+        MusicBandRequest request = new MusicBandRequest();
+        request.name = "add";
+        request.band = fullBand();
+        ByteBuffer payload = encode(request, Codecs.BINARY);
+        payload.limit(payload.limit() - 3);
+        Codecs.decodeRequest(payload);
+    }
+
+    @Test
+    public void testFilterRoundTrip(){
+        try{
+            MusicBandRequest request = new MusicBandRequest();
+            request.name = "subscribe";
+            request.filter = new SubscriptionFilter();
+            request.filter.owner = "user";
+            request.filter.genre = MusicGenre.SOUL;
+            request.filter.minX = -1f;
+            request.filter.maxX = 1f;
+            request.filter.minY = -2f;
+            request.filter.maxY = 2f;
+            request.filter.ids = new HashSet<>(Arrays.asList(1, 500, -3));
+            SubscriptionFilter decoded = Codecs.decodeRequest(encode(request, Codecs.BINARY)).filter;
+            assertEquals(request.filter.owner, decoded.owner);
+            assertEquals(request.filter.genre, decoded.genre);
+            assertEquals(request.filter.minX, decoded.minX);
+            assertEquals(request.filter.maxY, decoded.maxY);
+            assertEquals(request.filter.ids, decoded.ids);
+
+            request.filter = new SubscriptionFilter();
+            request.filter.minX = 0f;
+            decoded = Codecs.decodeRequest(encode(request, Codecs.BINARY)).filter;
+            assertTrue(decoded.isEmpty());
+            assertNull(decoded.minX);
+        }
+        catch (IOException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    private static ByteBuffer encode(Object message, MessageCodec codec) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if(message instanceof MusicBandRequest){
+            Codecs.encodeRequest(codec, (MusicBandRequest) message, out);
+        }
+        else {
+            Codecs.encodeResponse(codec, (MusicBandResponse) message, out);
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private static MusicBand fullBand() throws WrongArgumentException {
+        MusicBand band = new MusicBand();
+        band.setId(1234);
+        band.setName("Группа");
+        Coordinates coordinates = new Coordinates();
+        coordinates.setX(-3.5f);
+        coordinates.setY(323f);
+        band.setCoordinates(coordinates);
+        band.setCreationDate(LocalDateTime.parse("2022-08-26T17:56:20.217787600"));
+        band.setNumberOfParticipants(5);
+        band.setAlbumsCount(10000000000L);
+        band.setDescription("description");
+        band.setGenre(MusicGenre.BRIT_POP);
+        Album album = new Album();
+        album.setName("album");
+        album.setTracks(11);
+        album.setLength(null);
+        album.setSales(2.5f);
+        band.setBestAlbum(album);
+        band.setOwnerUsername("owner");
+        return band;
+    }
+}
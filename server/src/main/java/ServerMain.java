@@ -1,4 +1,5 @@
 import connection.MusicBandServer;
+import connection.ServerSettings;
 import data.CollectionManager;
 import data.database.DaoInitializationException;
 import data.database.bands.MusicBandDao;
@@ -25,7 +26,7 @@ public class ServerMain {
                     userName, pass, usersTable);
             CollectionManager collectionManager = new CollectionManager(musicBandDao);
             CommandsExecutor executor = new CommandsExecutor(collectionManager, userDao);
-            MusicBandServer server = new MusicBandServer(4321, executor);
+            MusicBandServer server = new MusicBandServer(4321, ServerSettings.fromSystemProperties(), executor);
             try {
                 server.launch();
             } catch (IOException | NoSuchAlgorithmException e) {
@@ -0,0 +1,169 @@
+package connection;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of direct buffers used for socket I/O.
+ * Capacities are rounded up to size classes that are powers of two from {@link #MIN_SIZE} to {@link #MAX_SIZE},
+ * bigger buffers are allocated on the heap and are not pooled
+ */
+public class BufferPool implements BufferPoolMXBean {
+    public static final int MIN_SIZE = 1024;
+    public static final int MAX_SIZE = 1024 * 1024;
+
+    private final SizeClass[] sizeClasses;
+    private final Map<ByteBuffer, Throwable> leases;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder unpooled = new LongAdder();
+
+    /**
+     * @param maxBytesPerClass max amount of bytes kept by the pool for every size class
+     * @param leakDetection remember where every not yet released buffer was acquired, slows the pool down
+     */
+    public BufferPool(long maxBytesPerClass, boolean leakDetection){
+        int count = Integer.numberOfTrailingZeros(MAX_SIZE) - Integer.numberOfTrailingZeros(MIN_SIZE) + 1;
+        sizeClasses = new SizeClass[count];
+        for(int i = 0; i < count; i++){
+            int size = MIN_SIZE << i;
+            sizeClasses[i] = new SizeClass(size, (int) Math.max(1, maxBytesPerClass / size));
+        }
+        leases = leakDetection ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+    }
+
+    /**
+     * @param capacity min capacity of the buffer
+     * @return cleared buffer with capacity not less than requested
+     */
+    public ByteBuffer acquire(int capacity){
+        acquired.increment();
+        SizeClass sizeClass = sizeClassFor(capacity);
+        ByteBuffer buffer;
+        if(sizeClass == null){
+            unpooled.increment();
+            buffer = ByteBuffer.allocate(capacity);
+        }
+        else {
+            buffer = sizeClass.buffers.poll();
+            if(buffer == null){
+                allocated.increment();
+                buffer = ByteBuffer.allocateDirect(sizeClass.size);
+            }
+            else {
+                sizeClass.pooled.decrementAndGet();
+            }
+            buffer.clear();
+        }
+        if(leases != null){
+            leases.put(buffer, new Throwable("Buffer of " + buffer.capacity() + " bytes acquired here"));
+        }
+        return buffer;
+    }
+
+    /**
+     * returns the buffer to the pool, the buffer must not be used after that
+     * @param buffer buffer returned by {@link #acquire(int)}
+     * @throws IllegalStateException leak detection is on and the buffer is not acquired from this pool
+     * or is already released
+     */
+    public void release(ByteBuffer buffer){
+        if(leases != null && leases.remove(buffer) == null){
+            throw new IllegalStateException("Buffer is released twice or does not belong to the pool");
+        }
+        released.increment();
+        if(!buffer.isDirect()){
+            return;
+        }
+        SizeClass sizeClass = sizeClassFor(buffer.capacity());
+        if(sizeClass == null || sizeClass.size != buffer.capacity()){
+            return;
+        }
+        if(sizeClass.pooled.incrementAndGet() <= sizeClass.maxPooled){
+            sizeClass.buffers.add(buffer);
+        }
+        else {
+            sizeClass.pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return allocation stack traces of buffers that are not released yet, empty if leak detection is off
+     */
+    public List<Throwable> getLeaks(){
+        if(leases == null){
+            return Collections.emptyList();
+        }
+        synchronized (leases){
+            return new ArrayList<>(leases.values());
+        }
+    }
+
+    @Override
+    public long getAcquiredCount(){
+        return acquired.sum();
+    }
+
+    @Override
+    public long getReleasedCount(){
+        return released.sum();
+    }
+
+    @Override
+    public long getOutstandingCount(){
+        return acquired.sum() - released.sum();
+    }
+
+    @Override
+    public long getAllocatedCount(){
+        return allocated.sum();
+    }
+
+    @Override
+    public long getUnpooledCount(){
+        return unpooled.sum();
+    }
+
+    @Override
+    public long getPooledBytes(){
+        long bytes = 0;
+        for(SizeClass sizeClass: sizeClasses){
+            bytes += (long) sizeClass.pooled.get() * sizeClass.size;
+        }
+        return bytes;
+    }
+
+    private SizeClass sizeClassFor(int capacity){
+        if(capacity > MAX_SIZE){
+            return null;
+        }
+        int size = Math.max(MIN_SIZE, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        return sizeClasses[Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MIN_SIZE)];
+    }
+
+    public String toString(){
+        return "acquired=" + getAcquiredCount() + " released=" + getReleasedCount()
+                + " allocated=" + getAllocatedCount() + " unpooled=" + getUnpooledCount()
+                + " pooledBytes=" + getPooledBytes();
+    }
+
+    private static class SizeClass {
+        private final int size;
+        private final int maxPooled;
+        private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooled = new AtomicInteger();
+
+        SizeClass(int size, int maxPooled){
+            this.size = size;
+            this.maxPooled = maxPooled;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package connection;
+
+/**
+ * Usage statistics of the I/O buffer pool published through JMX
+ */
+public interface BufferPoolMXBean {
+    long getAcquiredCount();
+
+    long getReleasedCount();
+
+    /**
+     * @return amount of buffers that are acquired and not yet released
+     */
+    long getOutstandingCount();
+
+    /**
+     * @return amount of direct buffers allocated because the pool had no free buffer of the needed size
+     */
+    long getAllocatedCount();
+
+    /**
+     * @return amount of buffers that were too big for the pool
+     */
+    long getUnpooledCount();
+
+    /**
+     * @return bytes held by free buffers of the pool
+     */
+    long getPooledBytes();
+}
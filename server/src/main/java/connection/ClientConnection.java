@@ -0,0 +1,274 @@
+package connection;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of one connected client, kept as the attachment of its SelectionKey
+ */
+public class ClientConnection {
+    private static final int INITIAL_BUFFER_SIZE = BufferPool.MIN_SIZE;
+
+    private final SocketChannel channel;
+    private final InetAddress address;
+    private final Reactor reactor;
+    private final BufferPool bufferPool;
+    private ByteBuffer readBuffer;
+    private volatile SelectionKey key;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final OutboundQueue outboundQueue;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean resyncRequired = new AtomicBoolean();
+    private final AtomicLong droppedUpdates = new AtomicLong();
+    private final AtomicLong resyncsCount = new AtomicLong();
+    private volatile SnapshotStream snapshotStream;
+    private volatile long lastReadMillis = System.currentTimeMillis();
+    /**
+     * true if pings were read and not answered yet, used by the reactor thread only
+     */
+    private boolean pingReceived = false;
+
+    ClientConnection(SocketChannel channel, Reactor reactor, long maxOutboundBytes, BufferPool bufferPool){
+        this.channel = channel;
+        this.address = channel.socket().getInetAddress();
+        this.reactor = reactor;
+        this.outboundQueue = new OutboundQueue(maxOutboundBytes);
+        this.bufferPool = bufferPool;
+        this.readBuffer = bufferPool.acquire(INITIAL_BUFFER_SIZE);
+    }
+
+    public SocketChannel getChannel(){
+        return channel;
+    }
+
+    /**
+     * @return remote address of the client, null if the channel was not connected
+     */
+    InetAddress getAddress(){
+        return address;
+    }
+
+    /**
+     * @return reactor that serves this client
+     */
+    Reactor getReactor(){
+        return reactor;
+    }
+
+    public SelectionKey getKey(){
+        return key;
+    }
+
+    void setKey(SelectionKey key){
+        this.key = key;
+    }
+
+    /**
+     * marks the connection as closed
+     * @return true if the connection was open before this call
+     */
+    boolean markClosed(){
+        return closed.compareAndSet(false, true);
+    }
+
+    public boolean isClosed(){
+        return closed.get();
+    }
+
+    /**
+     * queues the frame for sending, the frame is written later by the reactor of the client
+     * so the calling thread never blocks on a slow client
+     * @param frame frame to send, the connection takes its own reference to it
+     * @throws IOException the client is closed or has too many not yet written bytes
+     */
+    void send(Frame frame) throws IOException {
+        send(frame, false, Long.MAX_VALUE);
+    }
+
+    /**
+     * queues the update unless the client lags behind. A client whose not yet written bytes would cross
+     * the high-water mark loses its queued updates and gets the resync frame instead,
+     * later updates are skipped until the client loads the collection again
+     * @param update update frame, the connection takes its own reference to it
+     * @param resync frame that tells the client to resync
+     * @param highWaterBytes max amount of not yet written bytes an update can be queued after
+     * @return true if the update was queued
+     * @throws IOException the client is closed or has too many not yet written bytes
+     */
+    boolean sendUpdate(Frame update, Frame resync, long highWaterBytes) throws IOException {
+        if(resyncRequired.get()){
+            droppedUpdates.incrementAndGet();
+            return false;
+        }
+        if(send(update, true, highWaterBytes)){
+            return true;
+        }
+        if(resyncRequired.compareAndSet(false, true)){
+            droppedUpdates.addAndGet(outboundQueue.dropDroppable() + 1);
+            resyncsCount.incrementAndGet();
+            send(resync, false, Long.MAX_VALUE);
+        }
+        else {
+            droppedUpdates.incrementAndGet();
+        }
+        return false;
+    }
+
+    /**
+     * called before a load of the collection is executed for the client, updates are sent to it again
+     */
+    void resyncStarted(){
+        resyncRequired.set(false);
+    }
+
+    /**
+     * @return false if the frame was not queued because it would cross the high-water mark
+     */
+    private boolean send(Frame frame, boolean droppable, long highWaterBytes) throws IOException {
+        if(closed.get()){
+            throw new ClosedChannelException();
+        }
+        OutboundQueue.Offer offer = outboundQueue.offer(frame, droppable, highWaterBytes);
+        if(offer == OutboundQueue.Offer.ABOVE_HIGH_WATER){
+            return false;
+        }
+        if(offer == OutboundQueue.Offer.REJECTED){
+            if(closed.get()){
+                throw new ClosedChannelException();
+            }
+            throw new IOException("Outbound limit exceeded for client " + this);
+        }
+        if(flushScheduled.compareAndSet(false, true)){
+            reactor.flush(this);
+        }
+        return true;
+    }
+
+    /**
+     * @return snapshot that is being streamed to the client or null
+     */
+    SnapshotStream getSnapshotStream(){
+        return snapshotStream;
+    }
+
+    void setSnapshotStream(SnapshotStream snapshotStream){
+        this.snapshotStream = snapshotStream;
+    }
+
+    /**
+     * @return time of the last read from the client, in milliseconds
+     */
+    public long getLastReadMillis(){
+        return lastReadMillis;
+    }
+
+    void readStarted(long nowMillis){
+        lastReadMillis = nowMillis;
+    }
+
+    /**
+     * called when the client sent a ping, an empty frame
+     */
+    void pingReceived(){
+        pingReceived = true;
+    }
+
+    /**
+     * @return true if pings were received since the last call
+     */
+    boolean takePing(){
+        boolean received = pingReceived;
+        pingReceived = false;
+        return received;
+    }
+
+    OutboundQueue getOutboundQueue(){
+        return outboundQueue;
+    }
+
+    /**
+     * called by the reactor right before it writes the queue, later frames schedule another flush
+     */
+    void flushStarted(){
+        flushScheduled.set(false);
+    }
+
+    /**
+     * @return buffer with not yet decoded bytes, always in write mode
+     */
+    ByteBuffer getReadBuffer(){
+        return readBuffer;
+    }
+
+    /**
+     * makes sure the read buffer can hold at least the given amount of bytes, keeps buffered data
+     * @param capacity required capacity
+     */
+    void ensureReadCapacity(int capacity){
+        if(readBuffer.capacity() >= capacity){
+            return;
+        }
+        int newCapacity = readBuffer.capacity();
+        while (newCapacity < capacity){
+            newCapacity *= 2;
+        }
+        newCapacity = Math.min(newCapacity, FrameFormat.HEADER_SIZE + FrameFormat.MAX_FRAME_SIZE);
+        ByteBuffer newBuffer = bufferPool.acquire(newCapacity);
+        readBuffer.flip();
+        newBuffer.put(readBuffer);
+        bufferPool.release(readBuffer);
+        readBuffer = newBuffer;
+    }
+
+    /**
+     * returns buffers of the closed connection to the pool,
+     * must be called by the reactor thread so the read buffer is not in use
+     */
+    void releaseBuffers(){
+        outboundQueue.close();
+        if(readBuffer != null){
+            bufferPool.release(readBuffer);
+            readBuffer = null;
+        }
+    }
+
+    /**
+     * @return true if queued updates of the client were dropped and it has not loaded the collection since
+     */
+    public boolean isResyncRequired(){
+        return resyncRequired.get();
+    }
+
+    public long getDroppedUpdates(){
+        return droppedUpdates.get();
+    }
+
+    public long getResyncsCount(){
+        return resyncsCount.get();
+    }
+
+    public long getQueuedBytes(){
+        return outboundQueue.getQueuedBytes();
+    }
+
+    public long getMaxQueuedBytes(){
+        return outboundQueue.getMaxQueuedBytes();
+    }
+
+    /**
+     * @return how long the oldest not yet written frame of the client has been waiting, in milliseconds
+     */
+    public long getLagMillis(){
+        return outboundQueue.getLagMillis();
+    }
+
+    public String toString(){
+        return channel.toString();
+    }
+}
@@ -1,34 +1,96 @@
 package connection;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import codec.Codecs;
+import metrics.ServerMetrics;
+import metrics.Stage;
+
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 public class CommandsReader {
     private static final Logger logger = Logger.getLogger(CommandsReader.class.getName());
+    /**
+     * max amount of requests taken from one client per readable event, the rest waits in the channel
+     */
+    private static final int MAX_REQUESTS_PER_READ = 64;
 
-    private final ByteBuffer buffer;
-
-    public CommandsReader(){
-        buffer = ByteBuffer.allocate(1024);
+    /**
+     * reads available bytes from the client and decodes every complete frame,
+     * incomplete frames stay in the buffer of the connection until the rest arrives.
+     * Empty frames are pings, they are marked on the connection instead of being decoded.
+     * Must be called only by the selector thread that owns the connection
+     * @param connection connection to read from
+     * @return decoded requests, empty if no complete frame was received yet
+     * @throws EOFException client closed the connection
+     * @throws IOException could not read from the channel or the client sent a malformed frame
+     */
+    public List<MusicBandRequest> readCommands(ClientConnection connection) throws IOException {
+        SocketChannel channel = connection.getChannel();
+        List<MusicBandRequest> requests = new ArrayList<>();
+        boolean filled;
+        do {
+            int read = channel.read(connection.getReadBuffer());
+            if(read == -1){
+                throw new EOFException("Client closed the connection");
+            }
+            // a filled buffer may leave more bytes in the channel, they are read after complete frames are taken out
+            filled = !connection.getReadBuffer().hasRemaining();
+            takeFrames(connection, requests);
+        } while (filled && connection.getReadBuffer().hasRemaining() && requests.size() < MAX_REQUESTS_PER_READ);
+        long receivedAt = System.nanoTime();
+        for(MusicBandRequest command: requests){
+            command.receivedAt = receivedAt;
+            logger.info("Received: " + command.name + " From client: " + channel);
+        }
+        return requests;
     }
 
-    public MusicBandRequest readCommand(SocketChannel channel) throws IOException, ClassNotFoundException {
-        channel.read(buffer);
+    /**
+     * decodes complete frames of the read buffer, the buffer grows only to fit the validated length
+     * of an incomplete frame, so it never gets bigger than the biggest allowed frame
+     */
+    private void takeFrames(ClientConnection connection, List<MusicBandRequest> requests) throws IOException {
+        ByteBuffer buffer = connection.getReadBuffer();
         buffer.flip();
-        byte[] array = new byte[buffer.remaining()];
-        buffer.get(array);
-        buffer.clear();
-        ByteArrayInputStream bis = new ByteArrayInputStream(array);
-        DataInputStream dataInputStream = new DataInputStream(bis);
-        ObjectInputStream ois = new ObjectInputStream(dataInputStream);
-        Object readObject = ois.readObject();
-        MusicBandRequest command = (MusicBandRequest) readObject;
-        logger.info("Received: " + command.name + " From client: " + channel);
-        return command;
+        try{
+            while (buffer.remaining() >= FrameFormat.HEADER_SIZE){
+                int length = buffer.getInt(buffer.position());
+                if(length < 0 || length > FrameFormat.MAX_FRAME_SIZE){
+                    throw new IOException("Incorrect frame length " + length + " from client "
+                            + connection.getChannel());
+                }
+                if(buffer.remaining() < FrameFormat.HEADER_SIZE + length){
+                    break;
+                }
+                buffer.position(buffer.position() + FrameFormat.HEADER_SIZE);
+                if(length == 0){
+                    connection.pingReceived();
+                    continue;
+                }
+                requests.add(decode(buffer, length));
+            }
+        } finally {
+            buffer.compact();
+        }
+        if(buffer.position() >= FrameFormat.HEADER_SIZE){
+            connection.ensureReadCapacity(FrameFormat.HEADER_SIZE + buffer.getInt(0));
+        }
+    }
+
+    private MusicBandRequest decode(ByteBuffer buffer, int length) throws IOException {
+        ByteBuffer payload = buffer.slice();
+        payload.limit(length);
+        buffer.position(buffer.position() + length);
+        long start = System.nanoTime();
+        try{
+            return Codecs.decodeRequest(payload);
+        } finally {
+            ServerMetrics.get().record(Stage.DECODE, start);
+        }
     }
 }
@@ -0,0 +1,65 @@
+package connection;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Admission control of accepted clients, limits the total amount of connections and the amount per remote address
+ */
+class ConnectionLimiter {
+    private final int maxConnections;
+    private final int maxConnectionsPerAddress;
+    private final Map<InetAddress, Integer> perAddress = new HashMap<>();
+    private int connectionsCount = 0;
+    private long rejectedCount = 0;
+
+    ConnectionLimiter(int maxConnections, int maxConnectionsPerAddress){
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+    }
+
+    /**
+     * takes a place for a new client
+     * @return false if a limit is reached, the client must be refused then
+     */
+    synchronized boolean tryAcquire(InetAddress address){
+        int fromAddress = perAddress.getOrDefault(address, 0);
+        if(connectionsCount >= maxConnections || fromAddress >= maxConnectionsPerAddress){
+            rejectedCount++;
+            return false;
+        }
+        connectionsCount++;
+        perAddress.put(address, fromAddress + 1);
+        return true;
+    }
+
+    /**
+     * frees the place of a disconnected client
+     */
+    synchronized void release(InetAddress address){
+        connectionsCount--;
+        int fromAddress = perAddress.getOrDefault(address, 0) - 1;
+        if(fromAddress <= 0){
+            perAddress.remove(address);
+        }
+        else {
+            perAddress.put(address, fromAddress);
+        }
+    }
+
+    synchronized int getConnectionsCount(){
+        return connectionsCount;
+    }
+
+    synchronized int getConnectionsCount(InetAddress address){
+        return perAddress.getOrDefault(address, 0);
+    }
+
+    /**
+     * @return amount of refused clients since the start
+     */
+    synchronized long getRejectedCount(){
+        return rejectedCount;
+    }
+}
@@ -0,0 +1,30 @@
+package connection;
+
+import java.util.List;
+
+/**
+ * Outbound lag and admission of connected clients published through JMX
+ */
+public interface ConnectionsMXBean {
+    int getConnectionsCount();
+
+    /**
+     * @return amount of clients refused because of connection limits
+     */
+    long getRefusedCount();
+
+    /**
+     * @return amount of clients whose updates are suspended until they load the collection again
+     */
+    int getLaggingCount();
+
+    /**
+     * @return total amount of resync requests sent to slow clients
+     */
+    long getResyncsCount();
+
+    /**
+     * @return one line per client: address, queued bytes, max queued bytes, lag, idle time, dropped updates and resyncs
+     */
+    List<String> getClientLag();
+}
@@ -0,0 +1,64 @@
+package connection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Collects lag statistics of the connected clients on request
+ */
+class ConnectionsMonitor implements ConnectionsMXBean {
+    private final Collection<ClientConnection> connections;
+    private final ConnectionLimiter connectionLimiter;
+
+    ConnectionsMonitor(Collection<ClientConnection> connections, ConnectionLimiter connectionLimiter){
+        this.connections = connections;
+        this.connectionLimiter = connectionLimiter;
+    }
+
+    @Override
+    public int getConnectionsCount(){
+        return connections.size();
+    }
+
+    @Override
+    public long getRefusedCount(){
+        return connectionLimiter.getRejectedCount();
+    }
+
+    @Override
+    public int getLaggingCount(){
+        int count = 0;
+        for(ClientConnection connection: connections){
+            if(connection.isResyncRequired()){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getResyncsCount(){
+        long count = 0;
+        for(ClientConnection connection: connections){
+            count += connection.getResyncsCount();
+        }
+        return count;
+    }
+
+    @Override
+    public List<String> getClientLag(){
+        List<String> lines = new ArrayList<>();
+        for(ClientConnection connection: connections){
+            lines.add(connection.getChannel().socket().getRemoteSocketAddress()
+                    + " queued=" + connection.getQueuedBytes()
+                    + " maxQueued=" + connection.getMaxQueuedBytes()
+                    + " lagMillis=" + connection.getLagMillis()
+                    + " idleMillis=" + (System.currentTimeMillis() - connection.getLastReadMillis())
+                    + " droppedUpdates=" + connection.getDroppedUpdates()
+                    + " resyncs=" + connection.getResyncsCount()
+                    + (connection.isResyncRequired() ? " resyncRequired" : ""));
+        }
+        return lines;
+    }
+}
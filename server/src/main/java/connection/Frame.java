@@ -0,0 +1,50 @@
+package connection;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encoded message with the frame header. The same frame can be queued for many clients,
+ * every client gets its own view and the buffer goes back to the pool when the last reference is released
+ */
+class Frame {
+    private final ByteBuffer buffer;
+    private final BufferPool pool;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * @param buffer frame in read mode, its content must not change after this call
+     * @param pool pool that owns the buffer
+     */
+    Frame(ByteBuffer buffer, BufferPool pool){
+        this.buffer = buffer;
+        this.pool = pool;
+    }
+
+    /**
+     * @return independent read-only view of the frame
+     */
+    ByteBuffer view(){
+        return buffer.asReadOnlyBuffer();
+    }
+
+    int size(){
+        return buffer.remaining();
+    }
+
+    void retain(){
+        if(references.getAndIncrement() <= 0){
+            throw new IllegalStateException("Frame is already released");
+        }
+    }
+
+    void release(){
+        int left = references.decrementAndGet();
+        if(left == 0){
+            pool.release(buffer);
+        }
+        else if(left < 0){
+            throw new IllegalStateException("Frame is released twice");
+        }
+    }
+}
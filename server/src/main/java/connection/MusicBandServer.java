@@ -1,113 +1,426 @@
 package connection;
 
+import collectionitems.MusicBand;
 import data.database.QueryExecutionException;
 import logic.CommandsExecutor;
+import metrics.ServerMetrics;
 
 import java.io.*;
 import java.net.*;
+import java.lang.management.ManagementFactory;
 import java.nio.channels.*;
 import java.security.NoSuchAlgorithmException;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.util.AbstractMap;
-import java.util.Iterator;
-import java.util.concurrent.ExecutionException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+/**
+ * Multi-reactor server. The launching thread accepts clients and assigns each of them
+ * to the least loaded I/O reactor, reactors read requests and commands are executed
+ * by a bounded pool of worker threads. A full pool answers with OVERLOADED and requests that waited
+ * longer than the client timeout or the max queue time answer with EXPIRED, both without touching the collection.
+ * While requests of a client are executed the read interest of its key is cleared,
+ * so every readable event is handed off to the workers exactly once.
+ * Responses and broadcasts are queued per client and written by its reactor,
+ * updates are collected by {@link UpdateCoalescer} and broadcast together
+ * to the clients whose subscriptions match them.
+ * A snapshot requested with load_stream is sent in chunks as the client reads them,
+ * later requests of the client wait until the end marker is queued
+ */
 public class MusicBandServer {
     private static final Logger logger = Logger.getLogger(MusicBandServer.class.getName());
+    private static final long SESSION_SWEEP_INTERVAL_MILLIS = 60 * 1000;
 
     private final int port;
-    private final CommandsReader commandsReader;
+    private final ServerSettings settings;
     private final CommandsExecutor commandsExecutor;
-    private final ExecutorService cachedThreadPool = Executors.newCachedThreadPool();
-    private final ExecutorService fixedThreadPool = Executors.newFixedThreadPool(8);
+    private final ResponseSender responseSender;
+    private final BufferPool bufferPool;
+    private final UpdateCoalescer updateCoalescer;
+    private final ConnectionLimiter connectionLimiter;
+    /**
+     * frame sent to clients whose updates are dropped, never released
+     */
+    private Frame resyncFrame;
+    /**
+     * frame sent to refused clients, never released
+     */
+    private Frame refusedFrame;
+    private final ExecutorService commandsPool;
+    private final Set<ClientConnection> connections = ConcurrentHashMap.newKeySet();
+    private final SubscriptionIndex<ClientConnection> subscriptions = new SubscriptionIndex<>();
+    private Reactor[] reactors;
+    private int nextReactor = 0;
 
     public MusicBandServer(int port, CommandsExecutor commandsExecutor) {
+        this(port, new ServerSettings(), commandsExecutor);
+    }
+
+    public MusicBandServer(int port, ServerSettings settings, CommandsExecutor commandsExecutor) {
         this.port = port;
-        this.commandsReader = new CommandsReader();
+        this.settings = settings;
         this.commandsExecutor = commandsExecutor;
+        this.bufferPool = new BufferPool(settings.getBufferPoolBytesPerClass(), settings.isBufferLeakDetection());
+        this.responseSender = new ResponseSender(settings.getCodec(), bufferPool);
+        this.updateCoalescer = new UpdateCoalescer(settings.getCoalesceWindowMillis(), settings.getCoalesceMaxEvents(),
+                this::broadcast);
+        this.connectionLimiter = new ConnectionLimiter(settings.getMaxConnections(), settings.getMaxConnectionsPerAddress());
+        this.commandsPool = new ThreadPoolExecutor(settings.getWorkerThreads(), settings.getWorkerThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(settings.getWorkerQueueCapacity()));
     }
 
     public void launch() throws IOException, NoSuchAlgorithmException {
-        logger.info("Launching the server ");
+        logger.info("Launching the server with " + settings.getReactorsCount() + " reactors and "
+                + settings.getCodec().getClass().getSimpleName());
+        registerMBean(bufferPool, "connection:type=BufferPool");
+        registerMBean(new ConnectionsMonitor(connections, connectionLimiter), "connection:type=Connections");
+        registerMBean(ServerMetrics.get(), "metrics:type=ServerMetrics");
+        startMetricsDump();
+        startSessionSweep();
+        MusicBandResponse resyncResponse = new MusicBandResponse();
+        resyncResponse.status = ResponseStatus.RESYNC_REQUIRED;
+        resyncResponse.response = "Too many updates are not delivered, load the collection again";
+        resyncFrame = responseSender.encode(resyncResponse);
+        MusicBandResponse refusedResponse = new MusicBandResponse();
+        refusedResponse.status = ResponseStatus.FAIL;
+        refusedResponse.response = "Too many connections, try again later";
+        refusedFrame = responseSender.encode(refusedResponse);
 
-        Selector selector = Selector.open();
+        reactors = new Reactor[settings.getReactorsCount()];
+        for(int i = 0; i < reactors.length; i++){
+            reactors[i] = new Reactor("reactor-" + i, this, settings.getMaxOutboundBytes(), bufferPool,
+                    settings.getIdleTimeoutMillis());
+            Thread reactorThread = new Thread(reactors[i], "reactor-" + i);
+            reactorThread.setDaemon(true);
+            reactorThread.start();
+        }
 
         ServerSocketChannel ssc = ServerSocketChannel.open();
         ssc.bind(new InetSocketAddress(port));
-        ssc.configureBlocking(false);
-        ssc.register(selector, SelectionKey.OP_ACCEPT);
-
         while(true){
-            int select = selector.select();
-            if(select == 0){
-                continue;
+            SocketChannel channel = ssc.accept();
+            if(connectionLimiter.tryAcquire(channel.socket().getInetAddress())){
+                chooseReactor().register(channel);
+            }
+            else {
+                refuse(channel);
+            }
+        }
+    }
+
+    /**
+     * tells the client that it is refused and closes the channel, the frame is small enough
+     * to fit into the socket buffer, so the blocking write does not wait for the client
+     */
+    private void refuse(SocketChannel channel){
+        logger.info("Refusing client " + channel);
+        try{
+            channel.write(refusedFrame.view());
+        } catch (IOException ex){
+            logger.info("Could not notify refused client " + ex.getMessage());
+        }
+        try{
+            channel.close();
+        } catch (IOException ex){
+            logger.info(ex.getMessage());
+        }
+    }
+
+    /**
+     * logs all metrics periodically if a dump interval is set
+     */
+    private void startMetricsDump(){
+        long interval = settings.getMetricsDumpIntervalMillis();
+        if(interval == 0){
+            return;
+        }
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> logger.info("Metrics\n" + ServerMetrics.get().dump()),
+                interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * drops expired sessions periodically, so logins do not have to look for them
+     */
+    private void startSessionSweep(){
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(commandsExecutor::removeExpiredSessions,
+                SESSION_SWEEP_INTERVAL_MILLIS, SESSION_SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void registerMBean(Object bean, String name){
+        try{
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(name));
+        } catch (JMException ex){
+            logger.info("Could not register MBean " + name + " " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return reactor with the least amount of clients, ties are resolved in round-robin order
+     */
+    private Reactor chooseReactor(){
+        Reactor chosen = null;
+        for(int i = 0; i < reactors.length; i++){
+            Reactor reactor = reactors[(nextReactor + i) % reactors.length];
+            if(chosen == null || reactor.getConnectionsCount() < chosen.getConnectionsCount()){
+                chosen = reactor;
+            }
+        }
+        nextReactor = (nextReactor + 1) % reactors.length;
+        return chosen;
+    }
+
+    void connected(ClientConnection connection){
+        connections.add(connection);
+        subscriptions.subscribe(connection, null);
+        logger.info("Client connected " + connection);
+    }
+
+    /**
+     * passes requests read by a reactor to the worker pool
+     */
+    void dispatch(ClientConnection connection, List<MusicBandRequest> requests){
+        try{
+            commandsPool.execute(() -> process(connection, requests));
+        } catch (RejectedExecutionException ex){
+            logger.info("Command queue is full, rejecting requests from " + connection);
+            try{
+                for(int i = 0; i < requests.size(); i++){
+                    MusicBandResponse response = new MusicBandResponse();
+                    response.status = ResponseStatus.OVERLOADED;
+                    response.response = "Server is overloaded, try again later";
+                    response.requestId = requests.get(i).requestId;
+                    responseSender.sendResponse(response, connection);
+                }
+                connection.getReactor().resumeReading(connection);
+            } catch (IOException ioEx){
+                disconnect(connection);
+            }
+        }
+    }
+
+    /**
+     * executes requests of one client in order, runs on the worker pool
+     */
+    private void process(ClientConnection connection, List<MusicBandRequest> requests){
+        try{
+            for(int i = 0; i < requests.size(); i++){
+                MusicBandRequest request = requests.get(i);
+                if("load".equals(request.name) || "load_since".equals(request.name) || "load_stream".equals(request.name)){
+                    connection.resyncStarted();
+                }
+                MusicBandResponse response = expire(request);
+                if(response != null){
+                    logger.info("Request " + request.name + " from " + connection + " expired");
+                }
+                else if("subscribe".equals(request.name)){
+                    response = subscribe(connection, request.filter);
+                }
+                else {
+                    AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> entry = execute(request);
+                    MusicBandResponse updateResponse = entry.getValue();
+                    if(updateResponse != null){
+                        updateCoalescer.submit(updateResponse);
+                    }
+                    response = entry.getKey();
+                }
+                response.requestId = request.requestId;
+                if("load_stream".equals(request.name) && response.status == ResponseStatus.SUCCESS){
+                    startStream(connection, response, requests.subList(i + 1, requests.size()));
+                    return;
+                }
+                responseSender.sendResponse(response, connection);
             }
-            Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
-            while (selectedKeys.hasNext()){
-                SelectionKey k = selectedKeys.next();
-                    if(k.channel() == ssc){
-                        selectedKeys.remove();
-                        SocketChannel channel = ssc.accept();
-                        channel.configureBlocking(false);
-                        channel.register(selector, SelectionKey.OP_READ);
-                        logger.info("Client connected " + channel);
+            connection.getReactor().resumeReading(connection);
+        } catch (IOException ex){
+            disconnect(connection);
+        }
+    }
+
+    /**
+     * checks how long the request waited, it is not executed after the timeout of the client
+     * or the max queue time of the server
+     * @return expiration response or null if the request can be executed
+     */
+    private MusicBandResponse expire(MusicBandRequest request){
+        if(request.receivedAt == 0){
+            return null;
+        }
+        long waitedMillis = (System.nanoTime() - request.receivedAt) / 1_000_000;
+        boolean expired = waitedMillis > settings.getMaxQueueMillis()
+                || (request.timeoutMillis > 0 && waitedMillis > request.timeoutMillis);
+        if(!expired){
+            return null;
+        }
+        MusicBandResponse response = new MusicBandResponse();
+        response.status = ResponseStatus.EXPIRED;
+        response.response = "Request waited " + waitedMillis + " ms and was not executed, try again later";
+        return response;
+    }
+
+    /**
+     * starts streaming the loaded bands to the client, the response itself becomes the end marker
+     * @param nextRequests requests executed after the end marker is queued
+     */
+    private void startStream(ClientConnection connection, MusicBandResponse response,
+                             List<MusicBandRequest> nextRequests) throws IOException {
+        List<MusicBand> bands = response.musicBandList;
+        response.musicBandList = null;
+        SnapshotStream stream = new SnapshotStream(connection, bands, response, settings.getSnapshotChunkSize(),
+                settings.getSnapshotWindowBytes(), new ArrayList<>(nextRequests));
+        connection.setSnapshotStream(stream);
+        pumpStream(connection, stream);
+    }
+
+    /**
+     * sends next chunks of the snapshot on the worker pool, runs on the calling reactor if the pool is full
+     */
+    void continueStream(ClientConnection connection, SnapshotStream stream){
+        try{
+            commandsPool.execute(() -> {
+                try{
+                    pumpStream(connection, stream);
+                } catch (IOException ex){
+                    disconnect(connection);
+                }
+            });
+        } catch (RejectedExecutionException ex){
+            try{
+                pumpStream(connection, stream);
+            } catch (IOException ioEx){
+                disconnect(connection);
+            }
+        }
+    }
+
+    private void pumpStream(ClientConnection connection, SnapshotStream stream) throws IOException {
+        if(stream.pump(responseSender)){
+            connection.setSnapshotStream(null);
+            logger.info("Streamed snapshot to " + connection);
+            if(stream.getNextRequests().isEmpty()){
+                connection.getReactor().resumeReading(connection);
+            }
+            else {
+                dispatch(connection, stream.getNextRequests());
+            }
+        }
+    }
+
+    /**
+     * replaces the filter of updates sent to the client, subscriptions belong to the connection
+     * so they do not need authentication
+     */
+    private MusicBandResponse subscribe(ClientConnection connection, SubscriptionFilter filter){
+        subscriptions.subscribe(connection, filter);
+        MusicBandResponse response = new MusicBandResponse();
+        response.status = ResponseStatus.SUCCESS;
+        response.response = filter == null || filter.isEmpty() ? "Subscribed to all updates" : "Subscribed";
+        return response;
+    }
+
+    private AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> execute(MusicBandRequest request) {
+        try{
+            return commandsExecutor.executeCommand(request);
+        } catch (IOException | QueryExecutionException | NoSuchAlgorithmException ex) {
+            ex.printStackTrace();
+            logger.info(ex.getMessage());
+            MusicBandResponse response = new MusicBandResponse();
+            response.status = ResponseStatus.FAIL;
+            response.response = "Error on server";
+            return new AbstractMap.SimpleEntry<>(response, null);
+        }
+    }
+
+    /**
+     * sends the update to the subscribed clients, updates of commands come here through the coalescer.
+     * Clients without a filter get the whole update, filtered clients get only matching changes,
+     * clients that match the same changes share one frame, so every variant of the update is serialized only once.
+     * Clients that lag behind more than the high-water mark are asked to resync instead
+     */
+    private void broadcast(MusicBandResponse updateResponse){
+        int sent = sendUpdate(updateResponse, subscriptions.getUnfiltered());
+        if(subscriptions.getFilteredCount() > 0){
+            List<MusicBandResponse> changes = SubscriptionIndex.split(updateResponse);
+            Map<BitSet, List<ClientConnection>> groups = new HashMap<>();
+            for(Map.Entry<ClientConnection, BitSet> match: subscriptions.match(changes).entrySet()){
+                groups.computeIfAbsent(match.getValue(), key -> new ArrayList<>()).add(match.getKey());
+            }
+            for(Map.Entry<BitSet, List<ClientConnection>> group: groups.entrySet()){
+                sent += sendUpdate(SubscriptionIndex.select(updateResponse, changes, group.getKey()), group.getValue());
+            }
+        }
+        logger.info("Broadcast update to " + sent + " clients");
+    }
+
+    /**
+     * @return amount of clients the update was queued for
+     */
+    private int sendUpdate(MusicBandResponse updateResponse, List<ClientConnection> clients){
+        if(clients.isEmpty()){
+            return 0;
+        }
+        Frame frame;
+        try{
+            frame = responseSender.encode(updateResponse);
+        } catch (IOException ex){
+            logger.info("Could not encode update " + ex.getMessage());
+            return 0;
+        }
+        if(!ResponseSender.fits(frame)){
+            // clients can not read the update, they have to load the collection again
+            logger.info("Update of " + frame.size() + " bytes does not fit into a frame, asking clients to resync");
+            frame.release();
+            frame = resyncFrame;
+            frame.retain();
+        }
+        int sent = 0;
+        try{
+            for(ClientConnection client: clients){
+                try{
+                    if(client.sendUpdate(frame, resyncFrame, settings.getUpdateHighWaterBytes())){
+                        sent++;
                     }
-                    else{
-                        synchronized (k){
-                            Future<MusicBandRequest> commandFuture = cachedThreadPool.submit(
-                                    () -> {
-                                        try {
-                                            return commandsReader.readCommand((SocketChannel) k.channel());
-                                        }
-                                        catch (IOException ex){
-                                            throw new IOException(ex.getMessage());
-                                        }
-                                    });
-                            Future<AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse>> responseFuture = fixedThreadPool.submit(()-> {
-                                try {
-                                    MusicBandRequest request = commandFuture.get();
-                                    return commandsExecutor.executeCommand(request);
-                                } catch (InterruptedException | QueryExecutionException | NoSuchAlgorithmException ex) {
-                                    ex.printStackTrace();
-                                    logger.info(ex.getMessage());
-                                    MusicBandResponse response = new MusicBandResponse();
-                                    response.status = ResponseStatus.FAIL;
-                                    response.response = "Error on server";
-                                    return new AbstractMap.SimpleEntry<>(response, null);
-                                }
-                                catch (ExecutionException ex){
-                                    throw new IOException(ex.getMessage());
-                                }
-                            });
-                            fixedThreadPool.submit(()->{
-                                try{
-                                    MusicBandResponse response = responseFuture.get().getKey();
-                                    MusicBandResponse updateResponse = responseFuture.get().getValue();
-                                    if(response != null){
-                                        if(updateResponse != null){
-                                            for(SelectionKey key: selector.keys()){
-                                                if(key.channel() != ssc){
-                                                    ResponseSender.sendResponse(updateResponse, (SocketChannel) key.channel());
-                                                }
-                                            }
-                                        }
-                                        ResponseSender.sendResponse(response, (SocketChannel) k.channel());
-                                        selectedKeys.remove();
-                                    }
-                                }
-                                catch (InterruptedException ex) {
-                                    logger.info(ex.getMessage());
-                                } catch (ExecutionException|IOException ex){
-                                    logger.info("Client disconnected " + k.channel());
-                                    k.cancel();
-                                }
-                            });
-                        }
+                } catch (IOException ex){
+                    disconnect(client);
                 }
             }
+        } finally {
+            frame.release();
+        }
+        return sent;
+    }
+
+    void disconnect(ClientConnection connection){
+        subscriptions.unsubscribe(connection);
+        if(connections.remove(connection)){
+            logger.info("Client disconnected " + connection);
+        }
+        if(connection.getReactor().close(connection)){
+            connectionLimiter.release(connection.getAddress());
         }
     }
 }
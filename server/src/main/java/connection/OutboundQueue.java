@@ -0,0 +1,185 @@
+package connection;
+
+import metrics.LatencyHistogram;
+import metrics.ServerMetrics;
+import metrics.Stage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Frames waiting to be written to one client.
+ * Frames are offered by any thread and written by the reactor of the client with gathering writes,
+ * the queue holds a reference to every queued frame until the frame is written, dropped or the queue is closed
+ */
+class OutboundQueue {
+    /**
+     * max amount of frames passed to one gathering write
+     */
+    private static final int MAX_GATHER = 64;
+
+    /**
+     * result of {@link #offer(Frame, boolean, long)}
+     */
+    enum Offer {
+        QUEUED,
+        /**
+         * the frame would cross the high-water mark, it is not added
+         */
+        ABOVE_HIGH_WATER,
+        /**
+         * the queue is closed or the frame does not fit into its limit, it is not added
+         */
+        REJECTED
+    }
+
+    private static class Entry {
+        private final Frame frame;
+        private final ByteBuffer view;
+        private final boolean droppable;
+        private final long enqueuedAt;
+
+        private Entry(Frame frame, boolean droppable, long enqueuedAt){
+            this.frame = frame;
+            this.view = frame.view();
+            this.droppable = droppable;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final LatencyHistogram sendLatency = ServerMetrics.get().getStage(Stage.SEND);
+    private final long maxBytes;
+    private long queuedBytes = 0;
+    private long maxQueuedBytes = 0;
+    private boolean closed = false;
+
+    /**
+     * @param maxBytes max amount of not yet written bytes
+     */
+    OutboundQueue(long maxBytes){
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * adds the frame to the end of the queue
+     * @param droppable true if the frame may be dropped later by {@link #dropDroppable()}
+     * @return false if the queue is closed or the frame does not fit into its limit, the frame is not added then
+     */
+    boolean offer(Frame frame, boolean droppable){
+        return offer(frame, droppable, Long.MAX_VALUE) == Offer.QUEUED;
+    }
+
+    /**
+     * adds the frame to the end of the queue if not yet written bytes stay within the high-water mark,
+     * the check and the addition are one step, so concurrent offers can not cross the mark together
+     * @param droppable true if the frame may be dropped later by {@link #dropDroppable()}
+     * @param highWaterBytes max amount of not yet written bytes the frame can be queued with
+     */
+    synchronized Offer offer(Frame frame, boolean droppable, long highWaterBytes){
+        if(closed){
+            return Offer.REJECTED;
+        }
+        if(queuedBytes + frame.size() > highWaterBytes){
+            return Offer.ABOVE_HIGH_WATER;
+        }
+        if(queuedBytes + frame.size() > maxBytes){
+            return Offer.REJECTED;
+        }
+        frame.retain();
+        entries.addLast(new Entry(frame, droppable, System.nanoTime()));
+        queuedBytes += frame.size();
+        maxQueuedBytes = Math.max(maxQueuedBytes, queuedBytes);
+        return Offer.QUEUED;
+    }
+
+    /**
+     * writes as many queued frames as the channel accepts without blocking
+     * @return true if the queue was drained
+     */
+    synchronized boolean writeTo(GatheringByteChannel channel) throws IOException {
+        ByteBuffer[] batch = new ByteBuffer[Math.min(entries.size(), MAX_GATHER)];
+        while (!entries.isEmpty()){
+            int count = 0;
+            long batchBytes = 0;
+            Iterator<Entry> iterator = entries.iterator();
+            while (iterator.hasNext() && count < batch.length){
+                batch[count] = iterator.next().view;
+                batchBytes += batch[count].remaining();
+                count++;
+            }
+            long written = channel.write(batch, 0, count);
+            queuedBytes -= written;
+            long now = System.nanoTime();
+            while (!entries.isEmpty() && !entries.peekFirst().view.hasRemaining()){
+                Entry entry = entries.pollFirst();
+                sendLatency.record(now - entry.enqueuedAt);
+                entry.frame.release();
+            }
+            if(written < batchBytes){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * removes droppable frames that are not being written yet
+     * @return amount of dropped frames
+     */
+    synchronized int dropDroppable(){
+        int dropped = 0;
+        Iterator<Entry> iterator = entries.iterator();
+        boolean head = true;
+        while (iterator.hasNext()){
+            Entry entry = iterator.next();
+            boolean started = head && entry.view.position() > 0;
+            head = false;
+            if(entry.droppable && !started){
+                iterator.remove();
+                queuedBytes -= entry.view.remaining();
+                entry.frame.release();
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * releases all queued frames, later offers are refused
+     */
+    synchronized void close(){
+        closed = true;
+        for(Entry entry: entries){
+            entry.frame.release();
+        }
+        entries.clear();
+        queuedBytes = 0;
+    }
+
+    synchronized long getQueuedBytes(){
+        return queuedBytes;
+    }
+
+    /**
+     * @return the biggest amount of not yet written bytes seen by this queue
+     */
+    synchronized long getMaxQueuedBytes(){
+        return maxQueuedBytes;
+    }
+
+    /**
+     * @return how long the oldest not yet written frame has been waiting, in milliseconds
+     */
+    synchronized long getLagMillis(){
+        Entry oldest = entries.peekFirst();
+        return oldest == null ? 0 : (System.nanoTime() - oldest.enqueuedAt) / 1_000_000;
+    }
+
+    synchronized boolean isEmpty(){
+        return entries.isEmpty();
+    }
+}
@@ -0,0 +1,71 @@
+package connection;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Output stream that writes into buffers of the pool, growing by taking a bigger buffer
+ */
+class PooledOutputStream extends OutputStream {
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+
+    PooledOutputStream(BufferPool pool, int initialCapacity){
+        this.pool = pool;
+        this.buffer = pool.acquire(initialCapacity);
+    }
+
+    @Override
+    public void write(int b){
+        ensureRemaining(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length){
+        ensureRemaining(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * @return buffer in write mode, owned by the stream until {@link #toFrame()} or {@link #discard()}
+     */
+    ByteBuffer buffer(){
+        return buffer;
+    }
+
+    /**
+     * passes the written bytes to a frame, the stream must not be used after that
+     */
+    Frame toFrame(){
+        buffer.flip();
+        Frame frame = new Frame(buffer, pool);
+        buffer = null;
+        return frame;
+    }
+
+    /**
+     * returns the buffer to the pool without making a frame
+     */
+    void discard(){
+        if(buffer != null){
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void ensureRemaining(int length){
+        if(buffer.remaining() >= length){
+            return;
+        }
+        long needed = (long) buffer.position() + length;
+        if(needed > Integer.MAX_VALUE){
+            throw new OutOfMemoryError("Message is too big");
+        }
+        ByteBuffer bigger = pool.acquire((int) Math.max(needed, Math.min(Integer.MAX_VALUE, buffer.capacity() * 2L)));
+        buffer.flip();
+        bigger.put(buffer);
+        pool.release(buffer);
+        buffer = bigger;
+    }
+}
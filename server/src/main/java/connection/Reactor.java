@@ -0,0 +1,251 @@
+package connection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * I/O reactor, owns a selector and multiplexes reads of the clients assigned to it.
+ * Interest ops and registrations are changed only by the reactor thread,
+ * other threads pass such changes as tasks.
+ * Clients that send nothing for the idle timeout are closed, pings answered by the reactor keep them alive
+ */
+class Reactor implements Runnable {
+    private static final Logger logger = Logger.getLogger(Reactor.class.getName());
+
+    private final String name;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final CommandsReader commandsReader = new CommandsReader();
+    private final AtomicInteger connectionsCount = new AtomicInteger();
+    private final MusicBandServer server;
+    private final long maxOutboundBytes;
+    private final BufferPool bufferPool;
+    private final long idleTimeoutMillis;
+    /**
+     * clients by the time they become idle, null if idle clients are not closed
+     */
+    private final TimerWheel<ClientConnection> idleWheel;
+    /**
+     * empty frame sent in answer to pings, never released
+     */
+    private final Frame pongFrame = new Frame(ByteBuffer.allocate(FrameFormat.HEADER_SIZE), null);
+
+    /**
+     * @param idleTimeoutMillis time without reads after which a client is closed, 0 keeps idle clients
+     */
+    Reactor(String name, MusicBandServer server, long maxOutboundBytes, BufferPool bufferPool, long idleTimeoutMillis)
+            throws IOException {
+        this.name = name;
+        this.server = server;
+        this.maxOutboundBytes = maxOutboundBytes;
+        this.bufferPool = bufferPool;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.idleWheel = idleTimeoutMillis > 0
+                ? new TimerWheel<>(Math.max(1, idleTimeoutMillis / 10), idleTimeoutMillis, System.currentTimeMillis())
+                : null;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * @return amount of clients currently served by this reactor
+     */
+    int getConnectionsCount(){
+        return connectionsCount.get();
+    }
+
+    /**
+     * registers an accepted channel on this reactor, can be called from any thread
+     */
+    void register(SocketChannel channel){
+        connectionsCount.incrementAndGet();
+        execute(() -> {
+            ClientConnection connection = new ClientConnection(channel, this, maxOutboundBytes, bufferPool);
+            try{
+                channel.configureBlocking(false);
+                connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+            } catch (IOException ex){
+                logger.info("Could not register client " + channel + " " + ex.getMessage());
+                server.disconnect(connection);
+                return;
+            }
+            if(idleWheel != null){
+                idleWheel.schedule(connection, connection.getLastReadMillis() + idleTimeoutMillis);
+            }
+            server.connected(connection);
+        });
+    }
+
+    /**
+     * runs the task on the reactor thread
+     */
+    void execute(Runnable task){
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * writes queued frames of the client on the reactor thread, can be called from any thread
+     */
+    void flush(ClientConnection connection){
+        execute(() -> {
+            connection.flushStarted();
+            write(connection);
+        });
+    }
+
+    /**
+     * allows the reactor to read the next requests of the client
+     */
+    void resumeReading(ClientConnection connection){
+        execute(() -> {
+            SelectionKey key = connection.getKey();
+            if(key.isValid()){
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        });
+    }
+
+    /**
+     * cancels the key and closes the channel of the client, can be called from any thread
+     * @return true if the client was closed by this call
+     */
+    boolean close(ClientConnection connection){
+        if(!connection.markClosed()){
+            return false;
+        }
+        connectionsCount.decrementAndGet();
+        SelectionKey key = connection.getKey();
+        if(key != null){
+            key.cancel();
+        }
+        closeChannel(connection.getChannel());
+        execute(connection::releaseBuffers);
+        return true;
+    }
+
+    @Override
+    public void run(){
+        logger.info("Launching " + name);
+        while (!Thread.currentThread().isInterrupted()){
+            try{
+                runTasks();
+                selector.select(idleWheel == null ? 0 : idleWheel.getTickMillis());
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()){
+                    SelectionKey k = selectedKeys.next();
+                    selectedKeys.remove();
+                    if(k.isValid() && k.isWritable()){
+                        write((ClientConnection) k.attachment());
+                    }
+                    if(k.isValid() && k.isReadable()){
+                        read(k);
+                    }
+                }
+                if(idleWheel != null){
+                    idleWheel.advance(System.currentTimeMillis(), this::closeIfIdle);
+                }
+            } catch (IOException ex){
+                logger.info(name + " selection failed " + ex.getMessage());
+            }
+        }
+    }
+
+    private void read(SelectionKey k){
+        ClientConnection connection = (ClientConnection) k.attachment();
+        if(connection.isClosed()){
+            return;
+        }
+        connection.readStarted(System.currentTimeMillis());
+        List<MusicBandRequest> requests;
+        try{
+            requests = commandsReader.readCommands(connection);
+            if(connection.takePing()){
+                connection.send(pongFrame);
+            }
+        } catch (IOException ex){
+            server.disconnect(connection);
+            return;
+        }
+        if(requests.isEmpty()){
+            return;
+        }
+        k.interestOps(k.interestOps() & ~SelectionKey.OP_READ);
+        server.dispatch(connection, requests);
+    }
+
+    /**
+     * writes what the socket accepts, waits for OP_WRITE if something is left,
+     * asks for the next chunks of a streamed snapshot when there is room for them
+     */
+    private void write(ClientConnection connection){
+        SelectionKey key = connection.getKey();
+        if(connection.isClosed() || key == null || !key.isValid()){
+            return;
+        }
+        try{
+            if(connection.getOutboundQueue().writeTo(connection.getChannel())){
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+            else {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+            SnapshotStream stream = connection.getSnapshotStream();
+            if(stream != null && stream.tryActivate()){
+                server.continueStream(connection, stream);
+            }
+        } catch (IOException ex){
+            server.disconnect(connection);
+        }
+    }
+
+    /**
+     * closes the client if nothing was read from it for the idle timeout,
+     * clients whose requests are being executed are never idle
+     */
+    private void closeIfIdle(ClientConnection connection){
+        SelectionKey key = connection.getKey();
+        if(connection.isClosed() || key == null || !key.isValid()){
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long idleAt = connection.getLastReadMillis() + idleTimeoutMillis;
+        if((key.interestOps() & SelectionKey.OP_READ) == 0){
+            idleAt = now + idleTimeoutMillis;
+        }
+        if(idleAt > now){
+            idleWheel.schedule(connection, idleAt);
+            return;
+        }
+        logger.info("Closing idle client " + connection);
+        server.disconnect(connection);
+    }
+
+    private void runTasks(){
+        Runnable task;
+        while ((task = tasks.poll()) != null){
+            try{
+                task.run();
+            } catch (CancelledKeyException ex){
+                logger.info(name + " skipped task for a closed client");
+            }
+        }
+    }
+
+    private static void closeChannel(SocketChannel channel){
+        try{
+            channel.close();
+        } catch (IOException ex){
+            logger.info(ex.getMessage());
+        }
+    }
+}
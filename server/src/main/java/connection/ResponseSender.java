@@ -1,21 +1,84 @@
 package connection;
 
-import java.io.ByteArrayOutputStream;
+import codec.Codecs;
+import codec.MessageCodec;
+import metrics.ServerMetrics;
+import metrics.Stage;
+
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
 import java.util.logging.Logger;
 
 public class ResponseSender {
     private static final Logger logger = Logger.getLogger(ResponseSender.class.getName());
+    private static final int INITIAL_FRAME_SIZE = 4096;
+
+    private final MessageCodec codec;
+    private final BufferPool bufferPool;
+
+    /**
+     * @param codec codec used to encode all responses
+     * @param bufferPool pool that provides buffers for encoded frames
+     */
+    public ResponseSender(MessageCodec codec, BufferPool bufferPool){
+        this.codec = codec;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * queues the response for sending to the client
+     */
+    public void sendResponse(MusicBandResponse response, ClientConnection connection) throws IOException {
+        Frame frame = encode(response);
+        if(!fits(frame)){
+            logger.info("Response of " + frame.size() + " bytes does not fit into a frame, sending a failure to "
+                    + connection);
+            frame.release();
+            frame = encode(tooBig(response));
+        }
+        try{
+            connection.send(frame);
+        } finally {
+            frame.release();
+        }
+        logger.info("Sent response to " + connection);
+    }
+
+    /**
+     * @return true if the peer accepts the frame, its payload is not bigger than {@link FrameFormat#MAX_FRAME_SIZE}
+     */
+    static boolean fits(Frame frame){
+        return frame.size() - FrameFormat.HEADER_SIZE <= FrameFormat.MAX_FRAME_SIZE;
+    }
+
+    /**
+     * @return failure sent instead of a response that does not fit into a frame
+     */
+    private static MusicBandResponse tooBig(MusicBandResponse response){
+        MusicBandResponse failure = new MusicBandResponse();
+        failure.status = ResponseStatus.FAIL;
+        failure.requestId = response.requestId;
+        failure.response = "Response is too big, use load_stream to load the collection in chunks";
+        return failure;
+    }
 
-    public static void sendResponse(MusicBandResponse response, SocketChannel channel) throws IOException {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
-        objectOutputStream.writeObject(response);
-        objectOutputStream.flush();
-        channel.write(ByteBuffer.wrap(byteArrayOutputStream.toByteArray()));
-        logger.info("Sent response to " + channel);
+    /**
+     * @return frame with the encoded response, the caller must release it
+     */
+    Frame encode(MusicBandResponse response) throws IOException {
+        long start = System.nanoTime();
+        PooledOutputStream out = new PooledOutputStream(bufferPool, INITIAL_FRAME_SIZE);
+        try{
+            out.write(new byte[FrameFormat.HEADER_SIZE]);
+            Codecs.encodeResponse(codec, response, out);
+        } catch (IOException | RuntimeException ex){
+            out.discard();
+            throw ex;
+        } finally {
+            ServerMetrics.get().record(Stage.ENCODE, start);
+        }
+        ByteBuffer buffer = out.buffer();
+        buffer.putInt(0, buffer.position() - FrameFormat.HEADER_SIZE);
+        return out.toFrame();
     }
 }
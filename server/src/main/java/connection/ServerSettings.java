@@ -0,0 +1,289 @@
+package connection;
+
+import codec.Codecs;
+import codec.MessageCodec;
+
+/**
+ * Tunable parameters of the server
+ */
+public class ServerSettings {
+    private int reactorsCount = Runtime.getRuntime().availableProcessors();
+    private long maxOutboundBytes = 32L * 1024 * 1024;
+    private long updateHighWaterBytes = 4L * 1024 * 1024;
+    private MessageCodec codec = Codecs.BINARY;
+    private long bufferPoolBytesPerClass = 4L * 1024 * 1024;
+    private boolean bufferLeakDetection = false;
+    private long coalesceWindowMillis = 20;
+    private int coalesceMaxEvents = 1000;
+    private int snapshotChunkSize = 500;
+    private long snapshotWindowBytes = 512L * 1024;
+    private int maxConnections = 10000;
+    private int maxConnectionsPerAddress = 64;
+    private long idleTimeoutMillis = 5 * 60 * 1000;
+    private int workerThreads = 8;
+    private int workerQueueCapacity = 1024;
+    private long maxQueueMillis = 10 * 1000;
+    private long metricsDumpIntervalMillis = 0;
+
+    /**
+     * reads settings from system properties, missing properties keep default values
+     */
+    public static ServerSettings fromSystemProperties(){
+        ServerSettings settings = new ServerSettings();
+        settings.setReactorsCount(Integer.getInteger("server.reactors", settings.getReactorsCount()));
+        settings.setMaxOutboundBytes(Long.getLong("server.maxOutboundBytes", settings.getMaxOutboundBytes()));
+        settings.setUpdateHighWaterBytes(Long.getLong("server.updateHighWaterBytes",
+                settings.getUpdateHighWaterBytes()));
+        settings.setCodec(Codecs.forName(System.getProperty("server.codec", "binary")));
+        settings.setBufferPoolBytesPerClass(Long.getLong("server.bufferPool.bytesPerClass",
+                settings.getBufferPoolBytesPerClass()));
+        settings.setBufferLeakDetection(Boolean.getBoolean("server.bufferPool.leakDetection"));
+        settings.setCoalesceWindowMillis(Long.getLong("server.coalesce.windowMillis",
+                settings.getCoalesceWindowMillis()));
+        settings.setCoalesceMaxEvents(Integer.getInteger("server.coalesce.maxEvents", settings.getCoalesceMaxEvents()));
+        settings.setSnapshotChunkSize(Integer.getInteger("server.snapshot.chunkSize", settings.getSnapshotChunkSize()));
+        settings.setSnapshotWindowBytes(Long.getLong("server.snapshot.windowBytes", settings.getSnapshotWindowBytes()));
+        settings.setMaxConnections(Integer.getInteger("server.maxConnections", settings.getMaxConnections()));
+        settings.setMaxConnectionsPerAddress(Integer.getInteger("server.maxConnectionsPerAddress",
+                settings.getMaxConnectionsPerAddress()));
+        settings.setIdleTimeoutMillis(Long.getLong("server.idleTimeoutMillis", settings.getIdleTimeoutMillis()));
+        settings.setWorkerThreads(Integer.getInteger("server.workerThreads", settings.getWorkerThreads()));
+        settings.setWorkerQueueCapacity(Integer.getInteger("server.workerQueueCapacity",
+                settings.getWorkerQueueCapacity()));
+        settings.setMaxQueueMillis(Long.getLong("server.maxQueueMillis", settings.getMaxQueueMillis()));
+        settings.setMetricsDumpIntervalMillis(Long.getLong("server.metrics.dumpIntervalMillis",
+                settings.getMetricsDumpIntervalMillis()));
+        return settings;
+    }
+
+    /**
+     * @return amount of I/O reactor threads
+     */
+    public int getReactorsCount(){
+        return reactorsCount;
+    }
+
+    public void setReactorsCount(int reactorsCount){
+        if(reactorsCount <= 0){
+            throw new IllegalArgumentException("At least one reactor is needed");
+        }
+        this.reactorsCount = reactorsCount;
+    }
+
+    /**
+     * @return max amount of not yet written bytes per client, a client that exceeds it is disconnected
+     */
+    public long getMaxOutboundBytes(){
+        return maxOutboundBytes;
+    }
+
+    public void setMaxOutboundBytes(long maxOutboundBytes){
+        if(maxOutboundBytes < FrameFormat.HEADER_SIZE + FrameFormat.MAX_FRAME_SIZE){
+            throw new IllegalArgumentException("Outbound limit must fit at least one frame");
+        }
+        this.maxOutboundBytes = maxOutboundBytes;
+    }
+
+    /**
+     * @return max amount of not yet written bytes per client after which updates are still queued,
+     * a client that crosses it is asked to resync instead
+     */
+    public long getUpdateHighWaterBytes(){
+        return updateHighWaterBytes;
+    }
+
+    public void setUpdateHighWaterBytes(long updateHighWaterBytes){
+        if(updateHighWaterBytes <= 0){
+            throw new IllegalArgumentException("High-water mark must be positive");
+        }
+        this.updateHighWaterBytes = updateHighWaterBytes;
+    }
+
+    /**
+     * @return codec used to encode responses, requests are decoded with the codec chosen by the client
+     */
+    public MessageCodec getCodec(){
+        return codec;
+    }
+
+    public void setCodec(MessageCodec codec){
+        this.codec = codec;
+    }
+
+    /**
+     * @return max amount of bytes kept by the buffer pool for every size class
+     */
+    public long getBufferPoolBytesPerClass(){
+        return bufferPoolBytesPerClass;
+    }
+
+    public void setBufferPoolBytesPerClass(long bufferPoolBytesPerClass){
+        this.bufferPoolBytesPerClass = bufferPoolBytesPerClass;
+    }
+
+    /**
+     * @return true if the buffer pool remembers where not released buffers were acquired
+     */
+    public boolean isBufferLeakDetection(){
+        return bufferLeakDetection;
+    }
+
+    public void setBufferLeakDetection(boolean bufferLeakDetection){
+        this.bufferLeakDetection = bufferLeakDetection;
+    }
+
+    /**
+     * @return how long updates are collected into one broadcast, 0 sends every update at once
+     */
+    public long getCoalesceWindowMillis(){
+        return coalesceWindowMillis;
+    }
+
+    public void setCoalesceWindowMillis(long coalesceWindowMillis){
+        if(coalesceWindowMillis < 0){
+            throw new IllegalArgumentException("Coalescing window can not be negative");
+        }
+        this.coalesceWindowMillis = coalesceWindowMillis;
+    }
+
+    /**
+     * @return amount of collected band changes that is broadcast without waiting for the end of the window
+     */
+    public int getCoalesceMaxEvents(){
+        return coalesceMaxEvents;
+    }
+
+    public void setCoalesceMaxEvents(int coalesceMaxEvents){
+        if(coalesceMaxEvents <= 0){
+            throw new IllegalArgumentException("At least one event must fit into the window");
+        }
+        this.coalesceMaxEvents = coalesceMaxEvents;
+    }
+
+    /**
+     * @return max amount of bands in one chunk of a streamed snapshot
+     */
+    public int getSnapshotChunkSize(){
+        return snapshotChunkSize;
+    }
+
+    public void setSnapshotChunkSize(int snapshotChunkSize){
+        if(snapshotChunkSize <= 0){
+            throw new IllegalArgumentException("Chunk must hold at least one band");
+        }
+        this.snapshotChunkSize = snapshotChunkSize;
+    }
+
+    /**
+     * @return amount of not yet written bytes of a client after which chunks of a streamed snapshot
+     * wait until the client reads them
+     */
+    public long getSnapshotWindowBytes(){
+        return snapshotWindowBytes;
+    }
+
+    public void setSnapshotWindowBytes(long snapshotWindowBytes){
+        if(snapshotWindowBytes <= 0){
+            throw new IllegalArgumentException("Snapshot window must be positive");
+        }
+        this.snapshotWindowBytes = snapshotWindowBytes;
+    }
+
+    /**
+     * @return max amount of connected clients, new clients are refused above it
+     */
+    public int getMaxConnections(){
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections){
+        if(maxConnections <= 0){
+            throw new IllegalArgumentException("At least one connection must be allowed");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @return max amount of clients connected from one address
+     */
+    public int getMaxConnectionsPerAddress(){
+        return maxConnectionsPerAddress;
+    }
+
+    public void setMaxConnectionsPerAddress(int maxConnectionsPerAddress){
+        if(maxConnectionsPerAddress <= 0){
+            throw new IllegalArgumentException("At least one connection per address must be allowed");
+        }
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+    }
+
+    /**
+     * @return time without requests or pings after which a client is disconnected, 0 keeps idle clients
+     */
+    public long getIdleTimeoutMillis(){
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis){
+        if(idleTimeoutMillis < 0){
+            throw new IllegalArgumentException("Idle timeout can not be negative");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * @return amount of threads that execute commands
+     */
+    public int getWorkerThreads(){
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads){
+        if(workerThreads <= 0){
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * @return max amount of read batches waiting for a worker, clients above it get an overload response
+     */
+    public int getWorkerQueueCapacity(){
+        return workerQueueCapacity;
+    }
+
+    public void setWorkerQueueCapacity(int workerQueueCapacity){
+        if(workerQueueCapacity <= 0){
+            throw new IllegalArgumentException("Worker queue capacity must be positive");
+        }
+        this.workerQueueCapacity = workerQueueCapacity;
+    }
+
+    /**
+     * @return max time a request can wait after it is read, older requests expire without being executed
+     */
+    public long getMaxQueueMillis(){
+        return maxQueueMillis;
+    }
+
+    public void setMaxQueueMillis(long maxQueueMillis){
+        if(maxQueueMillis <= 0){
+            throw new IllegalArgumentException("Max queue time must be positive");
+        }
+        this.maxQueueMillis = maxQueueMillis;
+    }
+
+    /**
+     * @return how often metrics are written to the log, 0 writes them only on request through JMX
+     */
+    public long getMetricsDumpIntervalMillis(){
+        return metricsDumpIntervalMillis;
+    }
+
+    public void setMetricsDumpIntervalMillis(long metricsDumpIntervalMillis){
+        if(metricsDumpIntervalMillis < 0){
+            throw new IllegalArgumentException("Metrics dump interval can not be negative");
+        }
+        this.metricsDumpIntervalMillis = metricsDumpIntervalMillis;
+    }
+}
@@ -0,0 +1,85 @@
+package connection;
+
+import collectionitems.MusicBand;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Snapshot of the collection sent to one client as a series of chunks followed by the end marker.
+ * Chunks are encoded only while the outbound queue of the client is below the window,
+ * the reactor asks for more after it writes queued frames, so at most one window of the snapshot is encoded at a time
+ */
+class SnapshotStream {
+    private final ClientConnection connection;
+    private final List<MusicBand> bands;
+    private final MusicBandResponse end;
+    private final int chunkSize;
+    private final long windowBytes;
+    private final List<MusicBandRequest> nextRequests;
+    /**
+     * true while sending of chunks is scheduled or running, so only one thread sends them
+     */
+    private final AtomicBoolean active = new AtomicBoolean(true);
+    private int position = 0;
+    private volatile boolean finished = false;
+
+    /**
+     * @param bands bands of the snapshot
+     * @param end response sent after the last chunk, has the version of the snapshot and the id of the request
+     * @param chunkSize max amount of bands in one chunk
+     * @param windowBytes amount of queued bytes after which chunks wait for the client
+     * @param nextRequests requests of the client read after the snapshot request, executed after the stream ends
+     */
+    SnapshotStream(ClientConnection connection, List<MusicBand> bands, MusicBandResponse end, int chunkSize,
+                   long windowBytes, List<MusicBandRequest> nextRequests){
+        this.connection = connection;
+        this.bands = bands;
+        this.end = end;
+        this.chunkSize = chunkSize;
+        this.windowBytes = windowBytes;
+        this.nextRequests = nextRequests;
+    }
+
+    /**
+     * called by the reactor after it writes queued frames of the client
+     * @return true if the caller has to schedule {@link #pump(ResponseSender)}
+     */
+    boolean tryActivate(){
+        return !finished && connection.getQueuedBytes() < windowBytes && active.compareAndSet(false, true);
+    }
+
+    /**
+     * sends chunks until the window is full, must be called by the thread that activated the stream
+     * @return true if the end marker was sent by this call
+     */
+    boolean pump(ResponseSender responseSender) throws IOException {
+        do{
+            while (connection.getQueuedBytes() < windowBytes){
+                if(position >= bands.size()){
+                    responseSender.sendResponse(end, connection);
+                    finished = true;
+                    return true;
+                }
+                int chunkEnd = Math.min(position + chunkSize, bands.size());
+                MusicBandResponse chunk = new MusicBandResponse();
+                chunk.status = ResponseStatus.SNAPSHOT_CHUNK;
+                chunk.requestId = end.requestId;
+                chunk.musicBandList = new ArrayList<>(bands.subList(position, chunkEnd));
+                responseSender.sendResponse(chunk, connection);
+                position = chunkEnd;
+            }
+            active.set(false);
+        } while (tryActivate());
+        return false;
+    }
+
+    /**
+     * @return requests of the client that wait for the end of the stream
+     */
+    List<MusicBandRequest> getNextRequests(){
+        return nextRequests;
+    }
+}
@@ -0,0 +1,296 @@
+package connection;
+
+import collectionitems.MusicBand;
+import collectionitems.MusicGenre;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Update subscriptions of connected clients. Subscribers without a filter get every update,
+ * filtered subscribers are indexed by the most selective field of their filter: owner, then genre, then ids,
+ * subscribers with only a coordinate rectangle are checked for every band.
+ * A change of a band is checked only against subscribers found in the index by its owner, genre and id.
+ * Deletes carry only ids, so they go to every filtered subscriber whose id set does not exclude the id,
+ * updates are matched against the new state of the band. A subscriber that matched the band before the update
+ * but does not match it after gets a delete of the band instead, so it does not keep a band that left its filter
+ * @param <K> subscriber
+ */
+public class SubscriptionIndex<K> {
+    private final Set<K> unfiltered = new LinkedHashSet<>();
+    private final Map<K, SubscriptionFilter> filters = new HashMap<>();
+    private final Map<String, Set<K>> byOwner = new HashMap<>();
+    private final Map<MusicGenre, Set<K>> byGenre = new EnumMap<>(MusicGenre.class);
+    private final Map<Integer, Set<K>> byId = new HashMap<>();
+    private final Set<K> byRectangle = new HashSet<>();
+    private final Set<K> withoutIds = new HashSet<>();
+    private final Set<K> withoutOwner = new HashSet<>();
+
+    /**
+     * replaces the filter of the subscriber
+     * @param filter filter of updates, null or empty filter subscribes to all updates
+     */
+    public synchronized void subscribe(K subscriber, SubscriptionFilter filter){
+        unsubscribe(subscriber);
+        if(filter == null || filter.isEmpty()){
+            unfiltered.add(subscriber);
+            return;
+        }
+        filters.put(subscriber, filter);
+        if(filter.owner != null){
+            byOwner.computeIfAbsent(filter.owner, owner -> new HashSet<>()).add(subscriber);
+        }
+        else if(filter.genre != null){
+            byGenre.computeIfAbsent(filter.genre, genre -> new HashSet<>()).add(subscriber);
+        }
+        else if(filter.ids != null){
+            for(Integer id: filter.ids){
+                byId.computeIfAbsent(id, key -> new HashSet<>()).add(subscriber);
+            }
+        }
+        else {
+            byRectangle.add(subscriber);
+        }
+        if(filter.ids == null){
+            withoutIds.add(subscriber);
+        }
+        if(filter.owner == null){
+            withoutOwner.add(subscriber);
+        }
+    }
+
+    public synchronized void unsubscribe(K subscriber){
+        unfiltered.remove(subscriber);
+        SubscriptionFilter filter = filters.remove(subscriber);
+        if(filter == null){
+            return;
+        }
+        if(filter.owner != null){
+            removeFrom(byOwner, filter.owner, subscriber);
+        }
+        else if(filter.genre != null){
+            removeFrom(byGenre, filter.genre, subscriber);
+        }
+        else if(filter.ids != null){
+            for(Integer id: filter.ids){
+                removeFrom(byId, id, subscriber);
+            }
+        }
+        else {
+            byRectangle.remove(subscriber);
+        }
+        withoutIds.remove(subscriber);
+        withoutOwner.remove(subscriber);
+    }
+
+    /**
+     * @return subscribers that get every update
+     */
+    public synchronized List<K> getUnfiltered(){
+        return new ArrayList<>(unfiltered);
+    }
+
+    public synchronized int getFilteredCount(){
+        return filters.size();
+    }
+
+    /**
+     * finds filtered subscribers of the changes
+     * @param changes changes returned by {@link #split(MusicBandResponse)}
+     * @return indexes of matching changes for every filtered subscriber that matches at least one of them
+     */
+    public synchronized Map<K, BitSet> match(List<MusicBandResponse> changes){
+        Map<K, BitSet> matches = new HashMap<>();
+        if(filters.isEmpty()){
+            return matches;
+        }
+        for(int i = 0; i < changes.size(); i++){
+            MusicBandResponse change = changes.get(i);
+            switch (change.status){
+                case UPDATE_ADD:
+                case UPDATE_UPDATE:
+                    MusicBand band = change.musicBandList.get(0);
+                    matchBand(band, byOwner.get(band.getOwnerUsername()), matches, i);
+                    matchBand(band, byGenre.get(band.getGenre()), matches, i);
+                    matchBand(band, byId.get(band.getId()), matches, i);
+                    matchBand(band, byRectangle, matches, i);
+                    MusicBand previous = change.previousBands == null ? null : change.previousBands.get(0);
+                    if(previous != null){
+                        // the delete split from the update follows it
+                        matchLeaving(previous, band, byOwner.get(previous.getOwnerUsername()), matches, i + 1);
+                        matchLeaving(previous, band, byGenre.get(previous.getGenre()), matches, i + 1);
+                        matchLeaving(previous, band, byId.get(previous.getId()), matches, i + 1);
+                        matchLeaving(previous, band, byRectangle, matches, i + 1);
+                    }
+                    break;
+                case UPDATE_DELETE:
+                    if(change.previousBands != null){
+                        // split from an update, matched together with it
+                        break;
+                    }
+                    int id = change.ids.get(0);
+                    mark(withoutIds, matches, i);
+                    mark(byId.get(id), matches, i);
+                    break;
+                case UPDATE_CLEAR:
+                    mark(byOwner.get(change.response), matches, i);
+                    mark(withoutOwner, matches, i);
+                    break;
+                default:
+                    mark(filters.keySet(), matches, i);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * splits the update into changes of single bands, clears and other updates are kept as they are
+     */
+    public static List<MusicBandResponse> split(MusicBandResponse update){
+        List<MusicBandResponse> changes = new ArrayList<>();
+        split(update, changes);
+        return changes;
+    }
+
+    /**
+     * builds the update that has only the selected changes, neighbouring changes of one kind are merged
+     * @param update update the changes were split from
+     * @param changes changes returned by {@link #split(MusicBandResponse)}
+     * @param selected indexes of changes to keep
+     */
+    public static MusicBandResponse select(MusicBandResponse update, List<MusicBandResponse> changes, BitSet selected){
+        List<MusicBandResponse> updates = new ArrayList<>();
+        MusicBandResponse last = null;
+        for(int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)){
+            MusicBandResponse change = changes.get(i);
+            if(last != null && last.status == change.status && isBandChange(change)){
+                if(change.musicBandList != null){
+                    last.musicBandList.addAll(change.musicBandList);
+                }
+                if(change.ids != null){
+                    last.ids.addAll(change.ids);
+                }
+                last.version = Math.max(last.version, change.version);
+                continue;
+            }
+            last = change;
+            if(isBandChange(change)){
+                last = new MusicBandResponse();
+                last.status = change.status;
+                last.version = change.version;
+                last.musicBandList = change.musicBandList == null ? null : new ArrayList<>(change.musicBandList);
+                last.ids = change.ids == null ? null : new ArrayList<>(change.ids);
+            }
+            updates.add(last);
+        }
+        if(updates.size() == 1){
+            return updates.get(0);
+        }
+        MusicBandResponse combined = new MusicBandResponse();
+        combined.status = ResponseStatus.UPDATE_BATCH;
+        combined.batch = updates;
+        combined.version = update.version;
+        return combined;
+    }
+
+    private static void split(MusicBandResponse update, List<MusicBandResponse> changes){
+        switch (update.status){
+            case UPDATE_ADD:
+            case UPDATE_UPDATE:
+                for(int i = 0; i < update.musicBandList.size(); i++){
+                    MusicBand band = update.musicBandList.get(i);
+                    MusicBandResponse change = new MusicBandResponse();
+                    change.status = update.status;
+                    change.musicBandList = Collections.singletonList(band);
+                    change.version = update.version;
+                    changes.add(change);
+                    MusicBand previous = update.previousBands == null ? null : update.previousBands.get(i);
+                    if(previous != null){
+                        change.previousBands = Collections.singletonList(previous);
+                        MusicBandResponse leave = new MusicBandResponse();
+                        leave.status = ResponseStatus.UPDATE_DELETE;
+                        leave.ids = Collections.singletonList(band.getId());
+                        leave.previousBands = change.previousBands;
+                        leave.version = update.version;
+                        changes.add(leave);
+                    }
+                }
+                break;
+            case UPDATE_DELETE:
+                for(Integer id: update.ids){
+                    MusicBandResponse change = new MusicBandResponse();
+                    change.status = update.status;
+                    change.ids = Collections.singletonList(id);
+                    change.version = update.version;
+                    changes.add(change);
+                }
+                break;
+            case UPDATE_BATCH:
+                for(MusicBandResponse subUpdate: update.batch){
+                    split(subUpdate, changes);
+                }
+                break;
+            default:
+                changes.add(update);
+        }
+    }
+
+    private static boolean isBandChange(MusicBandResponse change){
+        return change.status == ResponseStatus.UPDATE_ADD || change.status == ResponseStatus.UPDATE_UPDATE
+                || change.status == ResponseStatus.UPDATE_DELETE;
+    }
+
+    private void matchBand(MusicBand band, Set<K> candidates, Map<K, BitSet> matches, int index){
+        if(candidates == null){
+            return;
+        }
+        for(K subscriber: candidates){
+            if(filters.get(subscriber).matches(band)){
+                matches.computeIfAbsent(subscriber, key -> new BitSet()).set(index);
+            }
+        }
+    }
+
+    /**
+     * marks candidates that match the band before the update and do not match it after
+     */
+    private void matchLeaving(MusicBand previous, MusicBand band, Set<K> candidates, Map<K, BitSet> matches,
+                              int index){
+        if(candidates == null){
+            return;
+        }
+        for(K subscriber: candidates){
+            SubscriptionFilter filter = filters.get(subscriber);
+            if(filter.matches(previous) && !filter.matches(band)){
+                matches.computeIfAbsent(subscriber, key -> new BitSet()).set(index);
+            }
+        }
+    }
+
+    private static <K> void mark(Set<K> subscribers, Map<K, BitSet> matches, int index){
+        if(subscribers == null){
+            return;
+        }
+        for(K subscriber: subscribers){
+            matches.computeIfAbsent(subscriber, key -> new BitSet()).set(index);
+        }
+    }
+
+    private static <T, K> void removeFrom(Map<T, Set<K>> index, T key, K subscriber){
+        Set<K> subscribers = index.get(key);
+        if(subscribers != null){
+            subscribers.remove(subscriber);
+            if(subscribers.isEmpty()){
+                index.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package connection;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel with a fixed tick. Scheduling and expiration are O(1) per item,
+ * items are not cancelled, the consumer of expired items decides if they are still due and schedules them again if not.
+ * Not thread safe, used by the reactor thread only
+ * @param <T> scheduled item
+ */
+class TimerWheel<T> {
+    private final long tickMillis;
+    private final ArrayDeque<T>[] slots;
+    /**
+     * last processed tick
+     */
+    private long currentTick;
+
+    /**
+     * @param tickMillis duration of one tick
+     * @param maxDelayMillis max delay items are scheduled for, longer delays expire early
+     * @param nowMillis current time
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimerWheel(long tickMillis, long maxDelayMillis, long nowMillis){
+        if(tickMillis <= 0){
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayDeque[(int) (maxDelayMillis / tickMillis) + 2];
+        for(int i = 0; i < slots.length; i++){
+            slots[i] = new ArrayDeque<>();
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    long getTickMillis(){
+        return tickMillis;
+    }
+
+    /**
+     * adds the item to the slot of the deadline, the item expires at the first tick after the deadline
+     */
+    void schedule(T item, long deadlineMillis){
+        long tick = Math.max(deadlineMillis / tickMillis + 1, currentTick + 1);
+        tick = Math.min(tick, currentTick + slots.length - 1);
+        slots[(int) (tick % slots.length)].addLast(item);
+    }
+
+    /**
+     * passes items of all ticks up to the current time to the consumer
+     */
+    void advance(long nowMillis, Consumer<T> expired){
+        long nowTick = nowMillis / tickMillis;
+        while (currentTick < nowTick){
+            currentTick++;
+            ArrayDeque<T> slot = slots[(int) (currentTick % slots.length)];
+            int count = slot.size();
+            for(int i = 0; i < count; i++){
+                expired.accept(slot.pollFirst());
+            }
+        }
+    }
+}
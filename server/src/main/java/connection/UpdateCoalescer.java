@@ -0,0 +1,261 @@
+package connection;
+
+import collectionitems.MusicBand;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects updates for a short window and passes them on as one combined update.
+ * Updates of one band are merged: the change with the latest version wins, an add followed by a delete
+ * disappears and an add followed by an update stays an add. A clear is kept in its place between merged updates,
+ * because it removes bands without listing them.
+ * Combined updates are passed to the sink by a single delivery thread in the order they were collected,
+ * so threads that submit updates never wait for a broadcast
+ */
+public class UpdateCoalescer {
+    private enum ChangeType {
+        ADD, UPDATE, DELETE
+    }
+
+    private static class Change {
+        private final ChangeType type;
+        private final int id;
+        private final MusicBand band;
+        private final long version;
+        /**
+         * state of the band before an update, null if it is not known
+         */
+        private final MusicBand previous;
+
+        private Change(ChangeType type, int id, MusicBand band, long version, MusicBand previous){
+            this.type = type;
+            this.id = id;
+            this.band = band;
+            this.version = version;
+            this.previous = previous;
+        }
+    }
+
+    private final long windowMillis;
+    private final int maxEvents;
+    private final Consumer<MusicBandResponse> sink;
+    private final ScheduledExecutorService timer;
+    private final Executor delivery;
+    /**
+     * updates in the order they have to be sent, merged band changes are added when a clear or the flush comes
+     */
+    private List<MusicBandResponse> pending = new ArrayList<>();
+    private final Map<Integer, Change> changes = new LinkedHashMap<>();
+    private int eventsCount = 0;
+    /**
+     * number of the current window, a scheduled flush of an earlier window does nothing
+     */
+    private long window = 0;
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param windowMillis how long updates are collected after the first one, 0 disables coalescing
+     * @param maxEvents amount of collected band changes that causes an immediate flush
+     * @param sink receives combined updates
+     */
+    public UpdateCoalescer(long windowMillis, int maxEvents, Consumer<MusicBandResponse> sink){
+        this(windowMillis, maxEvents, sink, Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "update-broadcast");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param delivery runs deliveries to the sink, must run them one at a time in the order they are given
+     */
+    UpdateCoalescer(long windowMillis, int maxEvents, Consumer<MusicBandResponse> sink, Executor delivery){
+        this.delivery = delivery;
+        this.windowMillis = windowMillis;
+        this.maxEvents = maxEvents;
+        this.sink = sink;
+        if(windowMillis > 0){
+            this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "update-coalescer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        else {
+            this.timer = null;
+        }
+    }
+
+    /**
+     * adds the update to the current window, the first update of a window schedules its flush
+     */
+    public synchronized void submit(MusicBandResponse update){
+        if(timer == null){
+            delivery.execute(() -> sink.accept(update));
+            return;
+        }
+        boolean wasEmpty = eventsCount == 0;
+        add(update);
+        if(eventsCount >= maxEvents){
+            flush();
+        }
+        else if(wasEmpty && eventsCount > 0){
+            long scheduled = window;
+            scheduledFlush = timer.schedule(() -> flushWindow(scheduled), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * flushes the window if it was not flushed yet by max events or by an explicit flush
+     */
+    private synchronized void flushWindow(long scheduled){
+        if(window == scheduled){
+            flush();
+        }
+    }
+
+    /**
+     * takes collected updates out of the window and hands them to the delivery thread,
+     * which passes them to the sink as one update
+     */
+    public synchronized void flush(){
+        if(scheduledFlush != null){
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        window++;
+        closeSegment();
+        eventsCount = 0;
+        if(pending.isEmpty()){
+            return;
+        }
+        List<MusicBandResponse> updates = pending;
+        pending = new ArrayList<>();
+        delivery.execute(() -> sink.accept(combine(updates)));
+    }
+
+    private static MusicBandResponse combine(List<MusicBandResponse> updates){
+        if(updates.size() == 1){
+            return updates.get(0);
+        }
+        MusicBandResponse combined = new MusicBandResponse();
+        combined.status = ResponseStatus.UPDATE_BATCH;
+        combined.batch = updates;
+        combined.version = updates.stream().mapToLong(u -> u.version).max().getAsLong();
+        return combined;
+    }
+
+    private void add(MusicBandResponse update){
+        switch (update.status){
+            case UPDATE_ADD:
+                for(MusicBand band: update.musicBandList){
+                    merge(new Change(ChangeType.ADD, band.getId(), band, update.version, null));
+                }
+                break;
+            case UPDATE_UPDATE:
+                for(int i = 0; i < update.musicBandList.size(); i++){
+                    MusicBand band = update.musicBandList.get(i);
+                    MusicBand previous = update.previousBands == null ? null : update.previousBands.get(i);
+                    merge(new Change(ChangeType.UPDATE, band.getId(), band, update.version, previous));
+                }
+                break;
+            case UPDATE_DELETE:
+                for(int id: update.ids){
+                    merge(new Change(ChangeType.DELETE, id, null, update.version, null));
+                }
+                break;
+            case UPDATE_BATCH:
+                for(MusicBandResponse subUpdate: update.batch){
+                    add(subUpdate);
+                }
+                break;
+            default:
+                closeSegment();
+                pending.add(update);
+                eventsCount++;
+        }
+    }
+
+    private void merge(Change change){
+        eventsCount++;
+        Change previous = changes.get(change.id);
+        if(previous == null){
+            changes.put(change.id, change);
+            return;
+        }
+        Change older = previous.version <= change.version ? previous : change;
+        Change newer = previous.version <= change.version ? change : previous;
+        if(older.type == ChangeType.ADD && newer.type == ChangeType.DELETE){
+            changes.remove(change.id);
+        }
+        else if(older.type == ChangeType.ADD){
+            changes.put(change.id, new Change(ChangeType.ADD, newer.id, newer.band, newer.version, null));
+        }
+        else if(older.type == ChangeType.UPDATE && newer.type == ChangeType.UPDATE){
+            // subscribers know the band as it was before the first update of the window
+            changes.put(change.id, new Change(ChangeType.UPDATE, newer.id, newer.band, newer.version, older.previous));
+        }
+        else {
+            changes.put(change.id, newer);
+        }
+    }
+
+    /**
+     * turns merged band changes into add, update and delete updates
+     */
+    private void closeSegment(){
+        if(changes.isEmpty()){
+            return;
+        }
+        MusicBandResponse added = segmentUpdate(ResponseStatus.UPDATE_ADD);
+        MusicBandResponse updated = segmentUpdate(ResponseStatus.UPDATE_UPDATE);
+        MusicBandResponse deleted = segmentUpdate(ResponseStatus.UPDATE_DELETE);
+        added.musicBandList = new ArrayList<>();
+        updated.musicBandList = new ArrayList<>();
+        updated.previousBands = new ArrayList<>();
+        deleted.ids = new ArrayList<>();
+        for(Change change: changes.values()){
+            MusicBandResponse target;
+            switch (change.type){
+                case ADD:
+                    target = added;
+                    added.musicBandList.add(change.band);
+                    break;
+                case UPDATE:
+                    target = updated;
+                    updated.musicBandList.add(change.band);
+                    updated.previousBands.add(change.previous);
+                    break;
+                default:
+                    target = deleted;
+                    deleted.ids.add(change.id);
+            }
+            target.version = Math.max(target.version, change.version);
+        }
+        changes.clear();
+        if(!added.musicBandList.isEmpty()){
+            pending.add(added);
+        }
+        if(!updated.musicBandList.isEmpty()){
+            pending.add(updated);
+        }
+        if(!deleted.ids.isEmpty()){
+            pending.add(deleted);
+        }
+    }
+
+    private static MusicBandResponse segmentUpdate(ResponseStatus status){
+        MusicBandResponse update = new MusicBandResponse();
+        update.status = status;
+        return update;
+    }
+}
@@ -0,0 +1,466 @@
+package data;
+
+import collectionitems.MusicBand;
+import collectionitems.MusicGenre;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Ordered list of bands with a hash index of their ids, lookups and removals by id take constant time.
+ * Ids are also indexed by the owner, so bands of one owner are found without looking at other bands,
+ * bands are kept sorted by the amount of albums, which gives the max and the min band in logarithmic time,
+ * and bands of every genre are counted.
+ * A removed band leaves an empty slot, slots are compacted when at least half of them are empty.
+ * Slots are stored in chunks of fixed size. {@link #freeze} shares the chunks with an immutable list,
+ * a chunk is copied the first time it is changed after that, so freezing and changing a band take time
+ * proportional to the amount of chunks and not of bands.
+ * The list is not thread safe, it is guarded by the lock of {@link CollectionManager}
+ */
+class BandList implements Iterable<MusicBand> {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int CHUNK_SHIFT = 7;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * slots by chunks, a chunk is null until a band is put into it
+     */
+    private MusicBand[][] chunks = new MusicBand[INITIAL_CAPACITY][];
+    /**
+     * amount of bands in every chunk
+     */
+    private int[] chunkSizes = new int[INITIAL_CAPACITY];
+    /**
+     * generation a chunk was copied in, chunks of older generations are shared with frozen lists
+     */
+    private int[] chunkGenerations = new int[INITIAL_CAPACITY];
+    private int generation = 0;
+    /**
+     * amount of used slots, including empty ones
+     */
+    private int end = 0;
+    private int size = 0;
+    /**
+     * id of a band to its slot
+     */
+    private final IntIndex index = new IntIndex();
+    /**
+     * ids of bands of every owner in the order they were added
+     */
+    private final Map<String, Set<Integer>> idsByOwner = new HashMap<>();
+    /**
+     * bands ordered by {@link MusicBand#compareTo}, bands with the same amount of albums are ordered by id
+     */
+    private final TreeSet<MusicBand> byAlbumsCount = new TreeSet<>(
+            Comparator.<MusicBand>naturalOrder().thenComparingInt(MusicBand::getId));
+    /**
+     * amount of bands of every genre by its ordinal
+     */
+    private final int[] genreCounts = new int[MusicGenre.values().length];
+
+    /**
+     * adds the band to the end of the list, a band with the same id is removed first
+     */
+    void add(MusicBand band){
+        remove(band.getId());
+        ensureFreeSlot();
+        index.put(band.getId(), end);
+        setSlot(end++, band);
+        size++;
+        addToIndexes(band);
+    }
+
+    /**
+     * inserts the band before the band at the position, takes linear time
+     * @throws IndexOutOfBoundsException position is negative or bigger than the size of the list
+     */
+    void add(int position, MusicBand band){
+        remove(band.getId());
+        if(position < 0 || position > size){
+            throw new IndexOutOfBoundsException("Position " + position + " is out of bounds for size " + size);
+        }
+        compact();
+        ensureFreeSlot();
+        for(int slot = end; slot > position; slot--){
+            MusicBand moved = slot(slot - 1);
+            setSlot(slot, moved);
+            index.put(moved.getId(), slot);
+        }
+        setSlot(position, band);
+        index.put(band.getId(), position);
+        end++;
+        size++;
+        addToIndexes(band);
+    }
+
+    /**
+     * @return band with the id or null if there is no such band
+     */
+    MusicBand get(int id){
+        int slot = index.get(id);
+        return slot < 0 ? null : slot(slot);
+    }
+
+    /**
+     * @return removed band or null if there was no band with the id
+     */
+    MusicBand remove(int id){
+        int slot = index.remove(id);
+        if(slot < 0){
+            return null;
+        }
+        MusicBand band = slot(slot);
+        setSlot(slot, null);
+        size--;
+        removeFromIndexes(band);
+        if(slot == end - 1){
+            end--;
+        }
+        else if(end > INITIAL_CAPACITY && size * 2 < end){
+            compact();
+        }
+        return band;
+    }
+
+    /**
+     * @return bands of the owner, takes time proportional to their amount
+     */
+    List<MusicBand> getOwned(String owner){
+        Set<Integer> ids = idsByOwner.get(owner);
+        if(ids == null){
+            return Collections.emptyList();
+        }
+        List<MusicBand> bands = new ArrayList<>(ids.size());
+        for(int id: ids){
+            bands.add(get(id));
+        }
+        return bands;
+    }
+
+    /**
+     * removes all bands of the owner, takes time proportional to their amount
+     * @return ids of removed bands
+     */
+    List<Integer> removeOwned(String owner){
+        Set<Integer> ids = idsByOwner.get(owner);
+        if(ids == null){
+            return Collections.emptyList();
+        }
+        List<Integer> removed = new ArrayList<>(ids);
+        for(int id: removed){
+            remove(id);
+        }
+        return removed;
+    }
+
+    /**
+     * @return band with the most albums or null if the list is empty
+     */
+    MusicBand max(){
+        return byAlbumsCount.isEmpty() ? null : byAlbumsCount.last();
+    }
+
+    /**
+     * @return band with the fewest albums or null if the list is empty
+     */
+    MusicBand min(){
+        return byAlbumsCount.isEmpty() ? null : byAlbumsCount.first();
+    }
+
+    /**
+     * @return amounts of bands with a lesser genre for every genre by its ordinal, bands without a genre are not counted
+     */
+    int[] countLesserGenres(){
+        int[] lesser = new int[genreCounts.length];
+        for(int ordinal = 1; ordinal < genreCounts.length; ordinal++){
+            lesser[ordinal] = lesser[ordinal - 1] + genreCounts[ordinal - 1];
+        }
+        return lesser;
+    }
+
+    int size(){
+        return size;
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+
+    void clear(){
+        chunks = new MusicBand[INITIAL_CAPACITY][];
+        chunkSizes = new int[INITIAL_CAPACITY];
+        chunkGenerations = new int[INITIAL_CAPACITY];
+        end = 0;
+        size = 0;
+        index.clear();
+        idsByOwner.clear();
+        byAlbumsCount.clear();
+        Arrays.fill(genreCounts, 0);
+    }
+
+    /**
+     * @return bands in the order of the list
+     */
+    MusicBand[] toArray(){
+        MusicBand[] bands = new MusicBand[size];
+        int count = 0;
+        for(MusicBand band: this){
+            bands[count++] = band;
+        }
+        return bands;
+    }
+
+    /**
+     * @return immutable list with the current bands in the order of the list, it shares chunks with this list
+     * and is not changed by later changes of it. Takes time proportional to the amount of chunks
+     */
+    List<MusicBand> freeze(){
+        int chunkCount = chunkCount(end);
+        int[] firstIndexes = new int[chunkCount + 1];
+        for(int chunk = 0; chunk < chunkCount; chunk++){
+            firstIndexes[chunk + 1] = firstIndexes[chunk] + chunkSizes[chunk];
+        }
+        generation++;
+        return new FrozenBands(Arrays.copyOf(chunks, chunkCount), firstIndexes);
+    }
+
+    /**
+     * iterates over bands in the order of the list, the list must not be changed during the iteration
+     */
+    @Override
+    public Iterator<MusicBand> iterator(){
+        return new Iterator<MusicBand>() {
+            private int slot = skipEmpty(0);
+
+            @Override
+            public boolean hasNext(){
+                return slot < end;
+            }
+
+            @Override
+            public MusicBand next(){
+                if(slot >= end){
+                    throw new NoSuchElementException();
+                }
+                MusicBand band = slot(slot);
+                slot = skipEmpty(slot + 1);
+                return band;
+            }
+        };
+    }
+
+    private int skipEmpty(int slot){
+        while (slot < end){
+            int chunk = slot >>> CHUNK_SHIFT;
+            if(chunkSizes[chunk] == 0){
+                slot = (chunk + 1) << CHUNK_SHIFT;
+            }
+            else if(chunks[chunk][slot & CHUNK_MASK] == null){
+                slot++;
+            }
+            else {
+                return slot;
+            }
+        }
+        return end;
+    }
+
+    private MusicBand slot(int slot){
+        MusicBand[] chunk = chunks[slot >>> CHUNK_SHIFT];
+        return chunk == null ? null : chunk[slot & CHUNK_MASK];
+    }
+
+    /**
+     * puts the band or null into the slot, copies the chunk first if it is shared with a frozen list
+     */
+    private void setSlot(int slot, MusicBand band){
+        int chunk = slot >>> CHUNK_SHIFT;
+        MusicBand[] bands = chunks[chunk];
+        if(bands == null){
+            if(band == null){
+                return;
+            }
+            bands = new MusicBand[CHUNK_SIZE];
+            chunks[chunk] = bands;
+            chunkGenerations[chunk] = generation;
+        }
+        else if(chunkGenerations[chunk] != generation){
+            bands = bands.clone();
+            chunks[chunk] = bands;
+            chunkGenerations[chunk] = generation;
+        }
+        if(bands[slot & CHUNK_MASK] != null){
+            chunkSizes[chunk]--;
+        }
+        if(band != null){
+            chunkSizes[chunk]++;
+        }
+        bands[slot & CHUNK_MASK] = band;
+    }
+
+    private void addToIndexes(MusicBand band){
+        byAlbumsCount.add(band);
+        if(band.getGenre() != null){
+            genreCounts[band.getGenre().ordinal()]++;
+        }
+        idsByOwner.computeIfAbsent(band.getOwnerUsername(), owner -> new LinkedHashSet<>()).add(band.getId());
+    }
+
+    private void removeFromIndexes(MusicBand band){
+        byAlbumsCount.remove(band);
+        if(band.getGenre() != null){
+            genreCounts[band.getGenre().ordinal()]--;
+        }
+        Set<Integer> ids = idsByOwner.get(band.getOwnerUsername());
+        if(ids != null){
+            ids.remove(band.getId());
+            if(ids.isEmpty()){
+                idsByOwner.remove(band.getOwnerUsername());
+            }
+        }
+    }
+
+    private void ensureFreeSlot(){
+        if(end < chunks.length << CHUNK_SHIFT){
+            return;
+        }
+        if(size * 2 <= end){
+            compact();
+            return;
+        }
+        chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        chunkSizes = Arrays.copyOf(chunkSizes, chunkSizes.length * 2);
+        chunkGenerations = Arrays.copyOf(chunkGenerations, chunkGenerations.length * 2);
+    }
+
+    /**
+     * moves bands to the start of the array without empty slots between them
+     */
+    private void compact(){
+        if(size == end){
+            return;
+        }
+        int count = 0;
+        for(int slot = skipEmpty(0); slot < end; slot = skipEmpty(slot + 1)){
+            MusicBand band = slot(slot);
+            if(slot != count){
+                setSlot(count, band);
+                index.put(band.getId(), count);
+            }
+            count++;
+        }
+        int usedChunks = chunkCount(count);
+        for(int slot = count; slot < Math.min(end, usedChunks << CHUNK_SHIFT); slot++){
+            setSlot(slot, null);
+        }
+        for(int chunk = usedChunks; chunk < chunkCount(end); chunk++){
+            chunks[chunk] = null;
+            chunkSizes[chunk] = 0;
+        }
+        end = count;
+    }
+
+    private static int chunkCount(int slots){
+        return (slots + CHUNK_MASK) >>> CHUNK_SHIFT;
+    }
+
+    /**
+     * Immutable list of bands over frozen chunks, empty slots are skipped
+     */
+    private static class FrozenBands extends AbstractList<MusicBand> {
+        private final MusicBand[][] chunks;
+        /**
+         * index of the first band of every chunk, the last element is the size of the list
+         */
+        private final int[] firstIndexes;
+
+        private FrozenBands(MusicBand[][] chunks, int[] firstIndexes){
+            this.chunks = chunks;
+            this.firstIndexes = firstIndexes;
+        }
+
+        /**
+         * finds the chunk by binary search and the band by a scan of the chunk
+         */
+        @Override
+        public MusicBand get(int index){
+            if(index < 0 || index >= size()){
+                throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size());
+            }
+            // the last chunk that starts at or before the index, chunks without bands start where the next one does
+            int low = 0;
+            int high = chunks.length - 1;
+            while (low < high){
+                int middle = (low + high + 1) >>> 1;
+                if(firstIndexes[middle] <= index){
+                    low = middle;
+                }
+                else {
+                    high = middle - 1;
+                }
+            }
+            int chunk = low;
+            int skip = index - firstIndexes[chunk];
+            for(MusicBand band: chunks[chunk]){
+                if(band != null && skip-- == 0){
+                    return band;
+                }
+            }
+            throw new IllegalStateException("Chunk has fewer bands than counted");
+        }
+
+        @Override
+        public int size(){
+            return firstIndexes[firstIndexes.length - 1];
+        }
+
+        @Override
+        public Iterator<MusicBand> iterator(){
+            return new Iterator<MusicBand>() {
+                private int chunk = 0;
+                private int slot = 0;
+                private int left = size();
+
+                @Override
+                public boolean hasNext(){
+                    return left > 0;
+                }
+
+                @Override
+                public MusicBand next(){
+                    if(left == 0){
+                        throw new NoSuchElementException();
+                    }
+                    while (true){
+                        if(slot == CHUNK_SIZE){
+                            chunk++;
+                            slot = 0;
+                        }
+                        if(firstIndexes[chunk] == firstIndexes[chunk + 1]){
+                            chunk++;
+                            slot = 0;
+                            continue;
+                        }
+                        MusicBand band = chunks[chunk][slot++];
+                        if(band != null){
+                            left--;
+                            return band;
+                        }
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package data;
+
+import collectionitems.MusicBand;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded in-memory log of collection changes. Every change gets the next version of the collection,
+ * when the log is full the oldest changes are dropped.
+ * The log is not thread safe, it is guarded by the lock of {@link CollectionManager}
+ */
+public class ChangeLog {
+    private enum ChangeType {
+        ADD, UPDATE, DELETE
+    }
+
+    private static class Change {
+        private final long version;
+        private final ChangeType type;
+        private final int id;
+        private final MusicBand band;
+
+        private Change(long version, ChangeType type, int id, MusicBand band){
+            this.version = version;
+            this.type = type;
+            this.id = id;
+            this.band = band;
+        }
+    }
+
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+    private final int capacity;
+    private long version;
+    /**
+     * oldest version the log still has all later changes for
+     */
+    private long baseVersion;
+
+    /**
+     * @param capacity max amount of kept changes
+     * @param initialVersion version of the collection before the first change,
+     *                       versions of different server runs must not overlap
+     */
+    public ChangeLog(int capacity, long initialVersion){
+        if(capacity <= 0){
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.version = initialVersion;
+        this.baseVersion = initialVersion;
+    }
+
+    /**
+     * @return version of the collection after the last change
+     */
+    public long getVersion(){
+        return version;
+    }
+
+    /**
+     * @return version of the change
+     */
+    public long recordAdd(MusicBand band){
+        return record(ChangeType.ADD, band.getId(), band);
+    }
+
+    /**
+     * @return version of the change
+     */
+    public long recordUpdate(MusicBand band){
+        return record(ChangeType.UPDATE, band.getId(), band);
+    }
+
+    /**
+     * @return version of the change
+     */
+    public long recordDelete(int id){
+        return record(ChangeType.DELETE, id, null);
+    }
+
+    /**
+     * forgets all changes, used when the collection is replaced as a whole
+     * @return new version of the collection
+     */
+    public long reset(){
+        changes.clear();
+        version++;
+        baseVersion = version;
+        return version;
+    }
+
+    /**
+     * collects changes made after the given version, several changes of one band are merged into its final state
+     * @return changes or null if the log does not have all changes after the version
+     */
+    public Delta since(long since){
+        return since(since, version);
+    }
+
+    /**
+     * collects changes made after the given version up to the other one, later changes are left out
+     * @param until version of the collection the changes lead to
+     * @return changes or null if the log does not have all changes between the versions
+     */
+    public Delta since(long since, long until){
+        if(since < baseVersion || since > until || until > version){
+            return null;
+        }
+        Map<Integer, Change> finalChanges = new LinkedHashMap<>();
+        Iterator<Change> iterator = changes.descendingIterator();
+        List<Change> newer = new ArrayList<>();
+        while (iterator.hasNext()){
+            Change change = iterator.next();
+            if(change.version <= since){
+                break;
+            }
+            if(change.version <= until){
+                newer.add(change);
+            }
+        }
+        for(int i = newer.size() - 1; i >= 0; i--){
+            Change change = newer.get(i);
+            Change previous = finalChanges.get(change.id);
+            boolean addedAfterSince = previous != null && previous.type == ChangeType.ADD;
+            if(change.type == ChangeType.DELETE && addedAfterSince){
+                finalChanges.remove(change.id);
+            }
+            else if(addedAfterSince){
+                finalChanges.put(change.id, new Change(change.version, ChangeType.ADD, change.id, change.band));
+            }
+            else {
+                finalChanges.put(change.id, change);
+            }
+        }
+        Delta delta = new Delta(until);
+        for(Change change: finalChanges.values()){
+            switch (change.type){
+                case ADD: delta.added.add(change.band); break;
+                case UPDATE: delta.updated.add(change.band); break;
+                case DELETE: delta.deleted.add(change.id); break;
+            }
+        }
+        return delta;
+    }
+
+    private long record(ChangeType type, int id, MusicBand band){
+        version++;
+        changes.addLast(new Change(version, type, id, band));
+        if(changes.size() > capacity){
+            baseVersion = changes.pollFirst().version;
+        }
+        return version;
+    }
+
+    /**
+     * Changes of the collection between two versions
+     */
+    public static class Delta {
+        private final long version;
+        private final List<MusicBand> added = new ArrayList<>();
+        private final List<MusicBand> updated = new ArrayList<>();
+        private final List<Integer> deleted = new ArrayList<>();
+
+        private Delta(long version){
+            this.version = version;
+        }
+
+        /**
+         * @return version of the collection with these changes applied
+         */
+        public long getVersion(){
+            return version;
+        }
+
+        public List<MusicBand> getAdded(){
+            return added;
+        }
+
+        public List<MusicBand> getUpdated(){
+            return updated;
+        }
+
+        public List<Integer> getDeleted(){
+            return deleted;
+        }
+    }
+}
@@ -3,43 +3,98 @@ package data;
 import collectionitems.MusicBand;
 import collectionitems.MusicGenre;
 import collectionitems.WrongArgumentException;
-import data.database.bands.MusicBandDao;
+import data.database.bands.MusicBandStorage;
 import data.database.QueryExecutionException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
- * Class to manage the collection
+ * Class to manage the collection.
+ * A change is validated, persisted to the database without holding the write lock and then applied to the collection
+ * under the write lock, which ends with publishing a new {@link CollectionSnapshot}.
+ * Read-only queries use the last published snapshot and never wait for writers,
+ * only queries made by a running transaction read its own unpublished state
  */
 public class CollectionManager {
+    private static final Logger logger = Logger.getLogger(CollectionManager.class.getName());
     private final Date initializationDate;
-    private Vector<MusicBand> collection;
-    private final MusicBandDao musicBandDao;
+    /**
+     * bands in the order of the collection, indexed by id
+     */
+    private final BandList collection = new BandList();
+    private final MusicBandStorage musicBandDao;
+    /**
+     * guards the collection and the change log, held only while a change is applied in memory
+     */
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    /**
+     * changes hold the read lock from their database statement until they are applied to the collection,
+     * a transaction holds the write lock, so no statement of another thread joins it on the shared connection
+     * and no change is in flight when the collection is reloaded after a rollback
+     */
+    private final ReentrantReadWriteLock transactionLock = new ReentrantReadWriteLock();
+    /**
+     * orders changes of one owner, owners are spread over the locks by the hash of their name
+     */
+    private final Lock[] ownerLocks = new Lock[OWNER_LOCKS];
+    private final ChangeLog changeLog;
+    private volatile CollectionSnapshot snapshot;
+    /**
+     * true while a transaction runs, its changes are published together when it ends
+     */
+    private volatile boolean publishDeferred = false;
+
+    /**
+     * default amount of changes kept for delta loads
+     */
+    public static final int DEFAULT_CHANGE_LOG_CAPACITY = 10000;
+    private static final int OWNER_LOCKS = 64;
+
+    public CollectionManager(MusicBandStorage musicBandDao) throws QueryExecutionException {
+        this(musicBandDao, DEFAULT_CHANGE_LOG_CAPACITY);
+    }
 
-    public CollectionManager(MusicBandDao musicBandDao) throws QueryExecutionException {
+    /**
+     * @param changeLogCapacity max amount of changes kept for delta loads
+     */
+    public CollectionManager(MusicBandStorage musicBandDao, int changeLogCapacity) throws QueryExecutionException {
         SimpleDateFormat formatter = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
         initializationDate = new Date();
         formatter.format(initializationDate);
         this.musicBandDao = musicBandDao;
-        collection = new Vector<>();
-        collection.addAll(musicBandDao.getBandsFromDb());
+        for(int i = 0; i < ownerLocks.length; i++){
+            ownerLocks[i] = new ReentrantLock();
+        }
+        for(MusicBand band: musicBandDao.getBandsFromDb()){
+            collection.add(band);
+        }
+        // versions grow with the start time, so versions of a previous run are older than any version of this one
+        changeLog = new ChangeLog(changeLogCapacity, initializationDate.getTime() * 1000);
+        publish();
+    }
+
+    /**
+     * @return the last published state of the collection
+     */
+    public CollectionSnapshot getSnapshot(){
+        return snapshot;
     }
 
     /**
      * @return time when this collection was loaded
      */
     public Date getInitializationDate(){
-        readWriteLock.readLock().lock();
-        try{
-            return initializationDate;
-        }
-        finally {
-            readWriteLock.readLock().unlock();
-        }
+        return initializationDate;
     }
 
     /**
@@ -47,13 +102,7 @@ public class CollectionManager {
      * @return size of the collection
      */
     public int getCollectionSize(){
-        readWriteLock.readLock().lock();
-        try{
-            return collection.size();
-        }
-        finally {
-            readWriteLock.readLock().unlock();
-        }
+        return view().size();
     }
 
     /**
@@ -61,52 +110,49 @@ public class CollectionManager {
      * @return all collection elements string representation
      */
     public String toString(){
-        readWriteLock.readLock().lock();
-        try{
-            StringBuilder res = new StringBuilder();
-            MusicBand[] bands = new MusicBand[collection.size()];
-            collection.toArray(bands);
-            List<MusicBand> bandsList = new ArrayList<>(Arrays.asList(bands));
-            bandsList.forEach(band -> {res.append(band); res.append("\n\n");});
-            return res.toString();
-        }
-        finally {
-            readWriteLock.readLock().unlock();
-        }
+        StringBuilder res = new StringBuilder();
+        view().getBands().forEach(band -> {res.append(band); res.append("\n\n");});
+        return res.toString();
     }
 
     /**
      * adds a new band to the database and collection
+     * @return version of the collection after the change
      */
-    public void addNewElementFromUser(MusicBand band, String username) throws QueryExecutionException {
-        readWriteLock.writeLock().lock();
-        try{
+    public long addNewElementFromUser(MusicBand band, String username) throws QueryExecutionException {
+        return changeBands(username, () -> {
             band.setId(musicBandDao.addBandToDb(band, username));
             band.setOwnerUsername(username);
-            collection.add(band);
-        } finally {
-            readWriteLock.writeLock().unlock();
-        }
+            return apply(() -> {
+                collection.add(band);
+                return changeLog.recordAdd(band);
+            });
+        });
     }
 
     /**
      * add new element from user to a particular place in the collection
      * @param index index where new element is supposed to be
+     * @return version of the collection after the change
      * @throws ArrayIndexOutOfBoundsException given index is out of bounds
      */
-    public void addNewElementFromUser(int index, MusicBand band, String username)
+    public long addNewElementFromUser(int index, MusicBand band, String username)
             throws ArrayIndexOutOfBoundsException, QueryExecutionException {
-        readWriteLock.writeLock().lock();
-        try{
+        if(!publishDeferred && index >= getCollectionSize()){
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        band.setOwnerUsername(username);
+        long version = changeBands(username, () -> addIf(band, username, () -> {
             if(index >= collection.size()){
-                throw new ArrayIndexOutOfBoundsException();
+                return false;
             }
-            band.setId(musicBandDao.addBandToDb(band, username));
-            band.setOwnerUsername(username);
             collection.add(index, band);
-        } finally {
-            readWriteLock.writeLock().unlock();
+            return true;
+        }));
+        if(version == 0){
+            throw new ArrayIndexOutOfBoundsException();
         }
+        return version;
     }
 
     /**
@@ -117,12 +163,20 @@ public class CollectionManager {
     public MusicBand findElementById(int id){
         readWriteLock.readLock().lock();
         try{
-            MusicBand band = null;
-            List<MusicBand> foundBands = collection.stream().filter(b -> b.getId() == id).collect(Collectors.toList());
-            if(foundBands.size() > 0){
-                band = foundBands.get(0);
-            }
-            return band;
+            return collection.get(id);
+        } finally {
+            readWriteLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param username owner of the bands
+     * @return bands of the user, found without looking at bands of other users
+     */
+    public List<MusicBand> getBandsOf(String username){
+        readWriteLock.readLock().lock();
+        try{
+            return collection.getOwned(username);
         } finally {
             readWriteLock.readLock().unlock();
         }
@@ -131,167 +185,352 @@ public class CollectionManager {
     /**
      * remofe element with a particular id from the collection
      * @param id if of the band
+     * @return version of the collection after the change
      * @throws WrongArgumentException id was incorrect(element with such id does not exist)
      */
-    public void removeElementById(int id) throws WrongArgumentException, QueryExecutionException {
-        readWriteLock.writeLock().lock();
-        try{
-            MusicBand band = findElementById(id);
-            if(band == null){
+    public long removeElementById(int id) throws WrongArgumentException, QueryExecutionException {
+        MusicBand band = findElementById(id);
+        if(band == null){
+            throw new WrongArgumentException("no element with such id");
+        }
+        return changeBands(band.getOwnerUsername(), () -> {
+            MusicBand current = findElementById(id);
+            if(current == null){
                 throw new WrongArgumentException("no element with such id");
             }
             musicBandDao.removeBandById(id);
-            collection.removeElement(band);
-        } finally {
-            readWriteLock.writeLock().unlock();
-        }
+            return apply(() -> {
+                collection.remove(id);
+                return changeLog.recordDelete(id);
+            });
+        });
     }
 
     /**
      * change element with a particular id
      * @param id id of the element
+     * @return version of the collection after the change
      * @throws WrongArgumentException id was incorrect(element with such id does not exist)
      */
-    public void changeElementFromUser(int id, MusicBand band) throws WrongArgumentException, QueryExecutionException {
-        readWriteLock.writeLock().lock();
-        try{
-            MusicBand oldBand = findElementById(id);
-            if(oldBand == null){
+    public long changeElementFromUser(int id, MusicBand band) throws WrongArgumentException, QueryExecutionException {
+        return changeElementFromUser(id, band, replaced -> {});
+    }
+
+    /**
+     * change element with a particular id
+     * @param id id of the element
+     * @param replaced receives the state of the element right before the change
+     * @return version of the collection after the change
+     * @throws WrongArgumentException id was incorrect(element with such id does not exist)
+     */
+    public long changeElementFromUser(int id, MusicBand band, Consumer<MusicBand> replaced)
+            throws WrongArgumentException, QueryExecutionException {
+        MusicBand oldBand = findElementById(id);
+        if(oldBand == null){
+            throw new WrongArgumentException("no element with such id");
+        }
+        return changeBands(oldBand.getOwnerUsername(), () -> {
+            MusicBand current = findElementById(id);
+            if(current == null){
                 throw new WrongArgumentException("no element with such id");
             }
-            musicBandDao.changeBandById(id, band);
-            collection.removeElement(oldBand);
             band.setId(id);
-            band.setOwnerUsername(oldBand.getOwnerUsername());
-            collection.add(band);
+            band.setOwnerUsername(current.getOwnerUsername());
+            musicBandDao.changeBandById(id, band);
+            return apply(() -> {
+                replaced.accept(collection.remove(id));
+                collection.add(band);
+                return changeLog.recordUpdate(band);
+            });
+        });
+    }
+
+    /**
+     * removes all bands of the user, takes time proportional to the amount of the user's bands
+     * @return version of the collection after the change
+     */
+    public long clearCollection(String username) throws QueryExecutionException {
+        return changeBands(username, () -> {
+            musicBandDao.clearUserBands(username);
+            return apply(() -> {
+                for(int id: collection.removeOwned(username)){
+                    changeLog.recordDelete(id);
+                }
+                return changeLog.getVersion();
+            });
+        });
+    }
+
+    /**
+     * runs the action with all its database changes in one transaction, no other change of the collection
+     * runs until the transaction ends. If the transaction is not committed, whatever failed, the collection is
+     * reloaded from the database before anything is published.
+     * Changes of the action are published together when it ends
+     * @return result of the action
+     * @throws QueryExecutionException the transaction was rolled back
+     */
+    public <T> T executeInTransaction(Supplier<T> action) throws QueryExecutionException {
+        transactionLock.writeLock().lock();
+        publishDeferred = true;
+        boolean committed = false;
+        try{
+            musicBandDao.beginTransaction();
+            T result;
+            try{
+                result = action.get();
+            } catch (RuntimeException ex){
+                try{
+                    musicBandDao.rollbackTransaction();
+                } catch (QueryExecutionException rollbackEx){
+                    ex.addSuppressed(rollbackEx);
+                }
+                throw ex;
+            }
+            if(!musicBandDao.commitTransaction()){
+                throw new QueryExecutionException("Transaction was rolled back");
+            }
+            committed = true;
+            return result;
         } finally {
-            readWriteLock.writeLock().unlock();
+            try{
+                if(!committed){
+                    discardChanges();
+                }
+            } finally {
+                publishDeferred = false;
+                readWriteLock.writeLock().lock();
+                try{
+                    publish();
+                } finally {
+                    readWriteLock.writeLock().unlock();
+                }
+                transactionLock.writeLock().unlock();
+            }
         }
     }
 
     /**
-     * clears the collection
+     * runs a change of the owner's bands. Changes of one owner run one after another,
+     * so their database statements and collection updates happen in the same order.
+     * Changes of different owners run in parallel, the write lock of the collection is taken only by {@link #apply}
+     * @return result of the change
      */
-    public void clearCollection(String username) throws QueryExecutionException {
-        readWriteLock.writeLock().lock();
+    private <E extends Exception> long changeBands(String owner, BandsChange<E> change)
+            throws E, QueryExecutionException {
+        // a transaction already excludes every other change
+        if(transactionLock.isWriteLockedByCurrentThread()){
+            return change.run();
+        }
+        Lock ownerLock = ownerLocks[Math.floorMod(owner.hashCode(), ownerLocks.length)];
+        ownerLock.lock();
+        transactionLock.readLock().lock();
         try{
-            musicBandDao.clearUserBands(username);
-            collection.clear();
-            collection.addAll(musicBandDao.getBandsFromDb());
+            return change.run();
         } finally {
-            readWriteLock.writeLock().unlock();
+            transactionLock.readLock().unlock();
+            ownerLock.unlock();
         }
     }
 
     /**
-     * get max band in collection
-     * @return max band
-     * @throws EmptyCollectionException collection was empty
+     * applies an already persisted change to the collection under the write lock and publishes the new snapshot
+     * @param change returns version of the collection after the change or 0 if nothing was changed
+     * @return result of the change
      */
-    public MusicBand getMax() throws EmptyCollectionException {
-        readWriteLock.readLock().lock();
+    private long apply(LongSupplier change){
+        readWriteLock.writeLock().lock();
         try{
-            if(collection.size() == 0){
-                throw new EmptyCollectionException();
+            long version = change.getAsLong();
+            if(version != 0){
+                publish();
             }
-            return collection.stream().max(MusicBand::compareTo).get();
+            return version;
         } finally {
-            readWriteLock.readLock().unlock();
+            readWriteLock.writeLock().unlock();
         }
     }
 
     /**
-     * get min band in collection
-     * @return min band
-     * @throws EmptyCollectionException collection was empty
+     * adds the band to the database and then to the collection if the insert still succeeds under the write lock,
+     * otherwise removes the band from the database again
+     * @param insert inserts the band into the collection, returns false if it can not be inserted any more
+     * @return version of the collection after the change or 0 if the band was not added
      */
-    public MusicBand getMin() throws EmptyCollectionException {
+    private long addIf(MusicBand band, String username, BooleanSupplier insert) throws QueryExecutionException {
+        band.setId(musicBandDao.addBandToDb(band, username));
+        long version = apply(() -> insert.getAsBoolean() ? changeLog.recordAdd(band) : 0);
+        if(version == 0){
+            musicBandDao.removeBandById(band.getId());
+        }
+        return version;
+    }
+
+    /**
+     * replaces the snapshot with the current state of the collection, called under the write lock.
+     * Takes time proportional to the amount of chunks of the collection, see {@link BandList#freeze}
+     */
+    private void publish(){
+        if(!publishDeferred){
+            snapshot = capture();
+        }
+    }
+
+    /**
+     * @return snapshot of the current state of the collection, called under a lock of the collection
+     */
+    private CollectionSnapshot capture(){
+        return new CollectionSnapshot(collection.freeze(), collection.max(), collection.min(),
+                collection.countLesserGenres(), changeLog.getVersion());
+    }
+
+    /**
+     * @return the published snapshot, or the current state of the collection for the thread that runs a transaction,
+     * so commands of a batch see changes of the commands before them
+     */
+    private CollectionSnapshot view(){
+        if(!publishDeferred || !transactionLock.isWriteLockedByCurrentThread()){
+            return snapshot;
+        }
         readWriteLock.readLock().lock();
         try{
-            if(collection.size() == 0){
-                throw new EmptyCollectionException();
-            }
-            return collection.stream().min(MusicBand::compareTo).get();
+            return capture();
         } finally {
             readWriteLock.readLock().unlock();
         }
     }
 
     /**
-     * add new element to collection if it is the max element
-     * @return true if successfully added, otherwise false
+     * replaces the collection with the bands of the database, called by a transaction
      */
-    public boolean addIfMax(MusicBand newBand, String username) throws QueryExecutionException {
+    private void reload() throws QueryExecutionException {
+        replace(musicBandDao.getBandsFromDb());
+    }
+
+    /**
+     * drops changes of a transaction that was not committed. If the database can not be read the collection is
+     * restored from the snapshot published before the transaction, which is the last committed state
+     */
+    private void discardChanges(){
+        try{
+            reload();
+        } catch (QueryExecutionException ex){
+            logger.info("Could not reload the collection, the state before the transaction is restored\n"
+                    + ex.getMessage());
+            replace(snapshot.getBands());
+        }
+    }
+
+    /**
+     * replaces the collection with the bands, the change log is reset
+     */
+    private void replace(List<MusicBand> bands){
         readWriteLock.writeLock().lock();
-        newBand.setOwnerUsername(username);
         try{
-            try {
-                MusicBand maxBand;
-                maxBand = getMax();
-                if(newBand.compareTo(maxBand) > 0){
-                    newBand.setId(musicBandDao.addBandToDb(newBand, username));
-                    collection.add(newBand);
-                    return true;
-                }
-            } catch (EmptyCollectionException e) {
-                newBand.setId(musicBandDao.addBandToDb(newBand, username));
-                collection.add(newBand);
-                return true;
+            collection.clear();
+            for(MusicBand band: bands){
+                collection.add(band);
             }
-            return false;
+            changeLog.reset();
         } finally {
             readWriteLock.writeLock().unlock();
         }
     }
 
     /**
-     * add new element to collection if it is the min element
-     * @return true if successfully added, otherwise false
+     * get max band in collection
+     * @return max band
+     * @throws EmptyCollectionException collection was empty
      */
-    public boolean addIfMin(MusicBand newBand, String username) throws QueryExecutionException {
-        readWriteLock.writeLock().lock();
+    public MusicBand getMax() throws EmptyCollectionException {
+        MusicBand max = view().getMax();
+        if(max == null){
+            throw new EmptyCollectionException();
+        }
+        return max;
+    }
+
+    /**
+     * get min band in collection
+     * @return min band
+     * @throws EmptyCollectionException collection was empty
+     */
+    public MusicBand getMin() throws EmptyCollectionException {
+        MusicBand min = view().getMin();
+        if(min == null){
+            throw new EmptyCollectionException();
+        }
+        return min;
+    }
+
+    /**
+     * add new element to collection if it is the max element.
+     * The band is compared with the published snapshot first and again right before it is added to the collection
+     * @return version of the collection after the change if the element was added, otherwise 0
+     */
+    public long addIfMax(MusicBand newBand, String username) throws QueryExecutionException {
         newBand.setOwnerUsername(username);
-        try{
-            try {
-                MusicBand minBand;
-                minBand = getMin();
-                if(newBand.compareTo(minBand) < 0){
-                    newBand.setId(musicBandDao.addBandToDb(newBand, username));
-                    collection.add(newBand);
-                    return true;
-                }
-            } catch (EmptyCollectionException e) {
-                newBand.setId(musicBandDao.addBandToDb(newBand, username));
-                collection.add(newBand);
-                return true;
+        if(!publishDeferred && !isMax(newBand, snapshot.getMax())){
+            return 0;
+        }
+        return changeBands(username, () -> addIf(newBand, username, () -> {
+            if(!isMax(newBand, collection.max())){
+                return false;
             }
-            return false;
-        } finally {
-            readWriteLock.writeLock().unlock();
+            collection.add(newBand);
+            return true;
+        }));
+    }
+
+    /**
+     * add new element to collection if it is the min element.
+     * The band is compared with the published snapshot first and again right before it is added to the collection
+     * @return version of the collection after the change if the element was added, otherwise 0
+     */
+    public long addIfMin(MusicBand newBand, String username) throws QueryExecutionException {
+        newBand.setOwnerUsername(username);
+        if(!publishDeferred && !isMin(newBand, snapshot.getMin())){
+            return 0;
         }
+        return changeBands(username, () -> addIf(newBand, username, () -> {
+            if(!isMin(newBand, collection.min())){
+                return false;
+            }
+            collection.add(newBand);
+            return true;
+        }));
+    }
+
+    /**
+     * @param max max band of the collection, null if it is empty
+     */
+    private static boolean isMax(MusicBand band, MusicBand max){
+        return max == null || band.compareTo(max) > 0;
+    }
+
+    /**
+     * @param min min band of the collection, null if it is empty
+     */
+    private static boolean isMin(MusicBand band, MusicBand min){
+        return min == null || band.compareTo(min) < 0;
     }
 
     public boolean checkOwner(int id, String username) throws QueryExecutionException {
-        readWriteLock.readLock().lock();
+        transactionLock.readLock().lock();
         try{
             return musicBandDao.isOwner(id, username);
         } finally {
-            readWriteLock.readLock().unlock();
+            transactionLock.readLock().unlock();
         }
     }
 
     /**
-     * count bands with genre lesser than given genre, bands with no genre are not counted
+     * count bands with genre lesser than given genre, bands with no genre are not counted.
+     * Bands are counted by genre on every change, so this takes constant time
      * @param genre genre to compare other genres to
      * @return the amount of counted bands
      */
     public int countWithLesserGenre(MusicGenre genre){
-        readWriteLock.readLock().lock();
-        try{
-            return (int) collection.stream().filter(b -> b.getGenre() != null && genre.compareTo(b.getGenre()) > 0).count();
-        } finally {
-            readWriteLock.readLock().unlock();
-        }
+        return view().countWithLesserGenre(genre);
     }
 
     /**
@@ -300,13 +539,8 @@ public class CollectionManager {
      * @return list of all found bands
      */
     public List<MusicBand> getWithDescriptionStart(String start){
-        readWriteLock.readLock().lock();
-        try{
-            return collection.stream().filter(b -> b.getDescription() != null
-                    && b.getDescription().startsWith(start)).collect(Collectors.toList());
-        } finally {
-            readWriteLock.readLock().unlock();
-        }
+        return view().getBands().stream().filter(b -> b.getDescription() != null
+                && b.getDescription().startsWith(start)).collect(Collectors.toList());
     }
 
     /**
@@ -314,22 +548,54 @@ public class CollectionManager {
      * @return list of bands
      */
     public List<MusicBand> getDescending(){
+        List<MusicBand> res = new ArrayList<>(view().getBands());
+        res.sort(MusicBand::compareTo);
+        return res;
+    }
+
+    /**
+     * @return version of the collection after the last change
+     */
+    public long getVersion(){
+        return view().getVersion();
+    }
+
+    /**
+     * changes of a running transaction are already in the log, but they are not published and can be rolled back,
+     * so only changes up to the version of the published snapshot are returned, except to the transaction itself
+     * @return changes made after the given version or null if they are not known any more
+     */
+    public ChangeLog.Delta getChangesSince(long version){
+        long until = view().getVersion();
         readWriteLock.readLock().lock();
         try{
-            List<MusicBand> res = new ArrayList<>(collection);
-            res.sort(MusicBand::compareTo);
-            return res;
+            return changeLog.since(version, until);
         } finally {
             readWriteLock.readLock().unlock();
         }
     }
 
+    /**
+     * @return all bands with the version of the collection they belong to
+     */
+    public AbstractMap.SimpleEntry<List<MusicBand>, Long> getAllWithVersion(){
+        CollectionSnapshot current = view();
+        return new AbstractMap.SimpleEntry<>(current.getBands(), current.getVersion());
+    }
+
+    /**
+     * @return unmodifiable list of all bands
+     */
     public List<MusicBand> getAll(){
-        readWriteLock.readLock().lock();
-        try{
-            return new ArrayList<>(collection);
-        } finally {
-            readWriteLock.readLock().unlock();
-        }
+        return view().getBands();
+    }
+
+    /**
+     * change of the collection that persists itself and then applies itself with {@link #apply}
+     * @param <E> exception thrown when the change is not valid any more
+     */
+    @FunctionalInterface
+    private interface BandsChange<E extends Exception> {
+        long run() throws E, QueryExecutionException;
     }
 }
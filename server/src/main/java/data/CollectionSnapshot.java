@@ -0,0 +1,73 @@
+package data;
+
+import collectionitems.MusicBand;
+import collectionitems.MusicGenre;
+
+import java.util.List;
+
+/**
+ * Immutable state of the collection. {@link CollectionManager} publishes a new snapshot after every change,
+ * so readers work with a consistent collection without taking any lock.
+ * The list of bands shares unchanged chunks with the collection, so publishing does not copy every band.
+ * Bands of a snapshot are never changed, a changed band is replaced with a new object
+ */
+public class CollectionSnapshot {
+    private final List<MusicBand> bands;
+    private final MusicBand max;
+    private final MusicBand min;
+    /**
+     * amount of bands with a lesser genre by the ordinal of the genre
+     */
+    private final int[] lesserGenreCounts;
+    private final long version;
+
+    /**
+     * @param bands immutable list of bands
+     */
+    CollectionSnapshot(List<MusicBand> bands, MusicBand max, MusicBand min, int[] lesserGenreCounts, long version){
+        this.bands = bands;
+        this.max = max;
+        this.min = min;
+        this.lesserGenreCounts = lesserGenreCounts;
+        this.version = version;
+    }
+
+    /**
+     * @return unmodifiable list of bands in the order of the collection
+     */
+    public List<MusicBand> getBands(){
+        return bands;
+    }
+
+    /**
+     * @return band with the most albums, null if the collection is empty
+     */
+    public MusicBand getMax(){
+        return max;
+    }
+
+    /**
+     * @return band with the fewest albums, null if the collection is empty
+     */
+    public MusicBand getMin(){
+        return min;
+    }
+
+    /**
+     * @return amount of bands with a genre lesser than the given one, bands without a genre are not counted
+     */
+    public int countWithLesserGenre(MusicGenre genre){
+        return lesserGenreCounts[genre.ordinal()];
+    }
+
+    public int size(){
+        return bands.size();
+    }
+
+    /**
+     * @return version of the collection this snapshot was taken at
+     */
+    public long getVersion(){
+        return version;
+    }
+}
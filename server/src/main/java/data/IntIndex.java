@@ -0,0 +1,129 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from int keys to non-negative int values, without boxing.
+ * Collisions are resolved with linear probing and removals shift later entries back,
+ * so the table never has tombstones
+ */
+class IntIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int ABSENT = -1;
+
+    private int[] keys;
+    /**
+     * {@link #ABSENT} marks an empty cell
+     */
+    private int[] values;
+    private int mask;
+    private int size = 0;
+
+    IntIndex(){
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return value of the key or -1 if the key is absent
+     */
+    int get(int key){
+        int cell = find(key);
+        return cell < 0 ? ABSENT : values[cell];
+    }
+
+    /**
+     * @param value non-negative value
+     */
+    void put(int key, int value){
+        if(value < 0){
+            throw new IllegalArgumentException("Value can not be negative");
+        }
+        int cell = home(key);
+        while (values[cell] != ABSENT){
+            if(keys[cell] == key){
+                values[cell] = value;
+                return;
+            }
+            cell = (cell + 1) & mask;
+        }
+        keys[cell] = key;
+        values[cell] = value;
+        size++;
+        if(size * 2 > values.length){
+            resize(values.length * 2);
+        }
+    }
+
+    /**
+     * @return removed value or -1 if the key was absent
+     */
+    int remove(int key){
+        int cell = find(key);
+        if(cell < 0){
+            return ABSENT;
+        }
+        int value = values[cell];
+        values[cell] = ABSENT;
+        size--;
+        int next = cell;
+        while (true){
+            next = (next + 1) & mask;
+            if(values[next] == ABSENT){
+                return value;
+            }
+            int home = home(keys[next]);
+            // the entry stays if its home is cyclically after the empty cell and not after the entry itself
+            boolean stays = cell <= next ? cell < home && home <= next : cell < home || home <= next;
+            if(!stays){
+                keys[cell] = keys[next];
+                values[cell] = values[next];
+                values[next] = ABSENT;
+                cell = next;
+            }
+        }
+    }
+
+    int size(){
+        return size;
+    }
+
+    void clear(){
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    private int find(int key){
+        int cell = home(key);
+        while (values[cell] != ABSENT){
+            if(keys[cell] == key){
+                return cell;
+            }
+            cell = (cell + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int home(int key){
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void resize(int capacity){
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for(int i = 0; i < oldValues.length; i++){
+            if(oldValues[i] != ABSENT){
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity){
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, ABSENT);
+        mask = capacity - 1;
+    }
+}
@@ -3,6 +3,8 @@ package data.database.bands;
 import collectionitems.*;
 import data.database.DaoInitializationException;
 import data.database.QueryExecutionException;
+import metrics.ServerMetrics;
+import metrics.Stage;
 
 import java.sql.*;
 import java.time.Instant;
@@ -12,12 +14,17 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
-public class MusicBandDao {
+/**
+ * Access to the table of bands. Every call uses its own statement, so calls from different threads
+ * can share the connection outside of transactions
+ */
+public class MusicBandDao implements MusicBandStorage {
     private static final Logger logger = Logger.getLogger(MusicBandDao.class.getName());
 
-    private final Statement statement;
     private final Connection connection;
     private final String tableName;
+    private boolean inTransaction = false;
+    private boolean transactionFailed = false;
 
     public MusicBandDao(String url, String login, String password, String tableName) throws DaoInitializationException {
         try {
@@ -28,7 +35,6 @@ public class MusicBandDao {
         }
         try {
             this.connection = DriverManager.getConnection("jdbc:postgresql://localhost:5432/" + url, login, password);
-            statement = connection.createStatement();
             this.tableName = tableName;
             createTableIfNotExists();
         } catch (SQLException ex) {
@@ -37,9 +43,11 @@ public class MusicBandDao {
         }
     }
 
+    @Override
     public List<MusicBand> getBandsFromDb() throws QueryExecutionException {
+        long start = System.nanoTime();
         List<MusicBand> bands = new ArrayList<>();
-        try {
+        try (Statement statement = connection.createStatement()) {
             ResultSet resultSet = statement.executeQuery("SELECT * FROM " + tableName);
             while (resultSet.next()) {
                 try {
@@ -93,13 +101,18 @@ public class MusicBandDao {
                 }
             }
         } catch (SQLException e) {
+            markFailed();
             throw new QueryExecutionException("Could not execute query to select all music bands \n" +
                     e.getMessage());
+        } finally {
+            ServerMetrics.get().record(Stage.DB, start);
         }
         return bands;
     }
 
+    @Override
     public int addBandToDb(MusicBand band, String owner) throws QueryExecutionException {
+        long start = System.nanoTime();
         String query = "INSERT INTO " + tableName +
                 "(name,x,y," +
                 "creation_date,number_of_participants,albums_count,description," +
@@ -139,21 +152,31 @@ public class MusicBandDao {
                 throw new SQLException("Could not retrieve the id");
             }
         } catch (SQLException ex) {
+            markFailed();
             logger.info("Could no add new music band to database\n" + ex.getMessage());
             throw new QueryExecutionException("Could no add new music band to database\n" + ex.getMessage());
+        } finally {
+            ServerMetrics.get().record(Stage.DB, start);
         }
     }
 
+    @Override
     public void removeBandById(int id) throws QueryExecutionException {
-        try {
+        long start = System.nanoTime();
+        try (Statement statement = connection.createStatement()) {
             statement.executeUpdate("DELETE FROM " + tableName + " WHERE id=" + id);
         } catch (SQLException ex) {
+            markFailed();
             logger.info("Could not remove band from db\n" + ex.getMessage());
             throw new QueryExecutionException("Could not remove band from db\n" + ex.getMessage());
+        } finally {
+            ServerMetrics.get().record(Stage.DB, start);
         }
     }
 
+    @Override
     public void changeBandById(int id, MusicBand band) throws QueryExecutionException {
+        long start = System.nanoTime();
         String query = "UPDATE " + tableName + " SET " +
                 "name=?,x=?,y=?,creation_date=?,number_of_participants=?,albums_count=?,description=?," +
                 "genre=?,best_album_name=?,best_album_tracks=?,best_album_length=?,best_album_sales=?" +
@@ -186,19 +209,27 @@ public class MusicBandDao {
             preparedStatement.setInt(13, id);
             preparedStatement.executeUpdate();
         } catch (SQLException ex) {
+            markFailed();
             logger.info("Could no add new music band to database\n" + ex.getMessage());
             throw new QueryExecutionException("Could no add new music band to database\n" + ex.getMessage());
+        } finally {
+            ServerMetrics.get().record(Stage.DB, start);
         }
     }
 
+    @Override
     public void clearUserBands(String username) throws QueryExecutionException {
+        long start = System.nanoTime();
         try {
             String query = "DELETE FROM " + tableName + " WHERE owner=" + "\'" + username + "\'";
             PreparedStatement preparedStatement = connection.prepareStatement(query);
             preparedStatement.executeUpdate();
         } catch (SQLException ex) {
+            markFailed();
             logger.info("Could not delete users bands\n" + ex.getMessage());
             throw new QueryExecutionException("Could not clearUserBands the table" + ex.getMessage());
+        } finally {
+            ServerMetrics.get().record(Stage.DB, start);
         }
     }
 
@@ -209,8 +240,10 @@ public class MusicBandDao {
      * @param username name of the user
      * @return false if the band with the id does not exist or if the user is not the owner
      */
+    @Override
     public boolean isOwner(int id, String username) throws QueryExecutionException {
-        try {
+        long start = System.nanoTime();
+        try (Statement statement = connection.createStatement()) {
             String query = "SELECT * FROM " + tableName + " WHERE id=" + id;
             ResultSet resultSet = statement.executeQuery(query);
             String owner = null;
@@ -222,7 +255,82 @@ public class MusicBandDao {
             }
             return owner.equals(username);
         } catch (SQLException ex) {
+            markFailed();
             throw new QueryExecutionException("Could not find owner in db " + ex.getMessage());
+        } finally {
+            ServerMetrics.get().record(Stage.DB, start);
+        }
+    }
+
+    /**
+     * starts a transaction, statements executed until {@link #commitTransaction()} are committed together
+     */
+    @Override
+    public void beginTransaction() throws QueryExecutionException {
+        try {
+            connection.setAutoCommit(false);
+            inTransaction = true;
+            transactionFailed = false;
+        } catch (SQLException ex) {
+            logger.info("Could not start transaction\n" + ex.getMessage());
+            throw new QueryExecutionException("Could not start transaction\n" + ex.getMessage());
+        }
+    }
+
+    /**
+     * commits the transaction, or rolls it back if one of its statements failed
+     * @return true if the transaction was committed
+     */
+    @Override
+    public boolean commitTransaction() throws QueryExecutionException {
+        long start = System.nanoTime();
+        try {
+            if(transactionFailed){
+                connection.rollback();
+                return false;
+            }
+            connection.commit();
+            return true;
+        } catch (SQLException ex) {
+            logger.info("Could not commit transaction\n" + ex.getMessage());
+            rollbackTransaction();
+            return false;
+        } finally {
+            ServerMetrics.get().record(Stage.DB, start);
+            endTransaction();
+        }
+    }
+
+    @Override
+    public void rollbackTransaction() throws QueryExecutionException {
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            logger.info("Could not roll back transaction\n" + ex.getMessage());
+            throw new QueryExecutionException("Could not roll back transaction\n" + ex.getMessage());
+        } finally {
+            endTransaction();
+        }
+    }
+
+    private void endTransaction() throws QueryExecutionException {
+        if(!inTransaction){
+            return;
+        }
+        inTransaction = false;
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException ex) {
+            throw new QueryExecutionException("Could not restore autocommit\n" + ex.getMessage());
+        }
+    }
+
+    /**
+     * a failed statement aborts the current transaction, it can only be rolled back after that
+     */
+    private void markFailed(){
+        if(inTransaction){
+            transactionFailed = true;
         }
     }
 
@@ -0,0 +1,43 @@
+package data.database.bands;
+
+import collectionitems.MusicBand;
+import data.database.QueryExecutionException;
+
+import java.util.List;
+
+/**
+ * Storage the collection of bands is persisted to, {@link data.CollectionManager} changes it
+ * before it changes the collection in memory
+ */
+public interface MusicBandStorage {
+    List<MusicBand> getBandsFromDb() throws QueryExecutionException;
+
+    /**
+     * @return id given to the band
+     */
+    int addBandToDb(MusicBand band, String owner) throws QueryExecutionException;
+
+    void removeBandById(int id) throws QueryExecutionException;
+
+    void changeBandById(int id, MusicBand band) throws QueryExecutionException;
+
+    void clearUserBands(String username) throws QueryExecutionException;
+
+    /**
+     * @return false if the band with the id does not exist or if the user is not the owner
+     */
+    boolean isOwner(int id, String username) throws QueryExecutionException;
+
+    /**
+     * starts a transaction, changes made until {@link #commitTransaction()} are committed together
+     */
+    void beginTransaction() throws QueryExecutionException;
+
+    /**
+     * commits the transaction, or rolls it back if one of its changes failed
+     * @return true if the transaction was committed
+     */
+    boolean commitTransaction() throws QueryExecutionException;
+
+    void rollbackTransaction() throws QueryExecutionException;
+}
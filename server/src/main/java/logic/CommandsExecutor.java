@@ -5,11 +5,14 @@ import collectionitems.WrongArgumentException;
 import connection.MusicBandRequest;
 import connection.MusicBandResponse;
 import connection.ResponseStatus;
+import data.ChangeLog;
 import data.CollectionManager;
 import data.database.QueryExecutionException;
 import data.database.users.User;
 import data.database.users.UserDao;
 import logic.commands.*;
+import metrics.ServerMetrics;
+import metrics.Stage;
 
 import javax.xml.bind.DatatypeConverter;
 import java.io.IOException;
@@ -17,53 +20,197 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
+/**
+ * Executes requests with commands of the {@link CommandRegistry}. Metadata of a command decides
+ * if a session is needed, if the command can be a part of a batch and if one instance of it serves all requests.
+ * Session and load commands are executed by the executor itself, they are registered without a factory
+ */
 public class CommandsExecutor {
+    /**
+     * default time after the last request of a session when it expires
+     */
+    public static final long DEFAULT_SESSION_TTL_MILLIS = 30 * 60 * 1000;
+
     private final CollectionManager collectionManager;
     private final UserDao userDao;
-    private final List<User> userList;
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final SessionManager sessionManager;
+    private final CommandRegistry registry;
+    private final ServerMetrics metrics = ServerMetrics.get();
+    /**
+     * commands executed by the executor itself, by command id
+     */
+    private final BuiltInCommand[] builtInCommands;
+    /**
+     * instances of stateless commands, by command id
+     */
+    private final Command[] sharedCommands;
 
     public CommandsExecutor(CollectionManager collectionManager, UserDao userDao) throws QueryExecutionException {
+        this(collectionManager, userDao, new SessionManager(DEFAULT_SESSION_TTL_MILLIS));
+    }
+
+    public CommandsExecutor(CollectionManager collectionManager, UserDao userDao, SessionManager sessionManager)
+            throws QueryExecutionException {
+        this(collectionManager, userDao, sessionManager, CommandRegistry.load());
+    }
+
+    /**
+     * @param registry commands that can be executed, session and load commands are added to it
+     */
+    public CommandsExecutor(CollectionManager collectionManager, UserDao userDao, SessionManager sessionManager,
+                            CommandRegistry registry) throws QueryExecutionException {
         this.collectionManager = collectionManager;
         this.userDao = userDao;
-        this.userList = userDao.getAllUsers();
+        this.sessionManager = sessionManager;
+        this.registry = registry;
+        Map<CommandDescriptor, BuiltInCommand> builtIns = new LinkedHashMap<>();
+        builtIns.put(new CommandDescriptor("register", true, false, false, false, null),
+                (request, username) -> register(request));
+        builtIns.put(new CommandDescriptor("login", false, false, false, false, null),
+                (request, username) -> login(request));
+        builtIns.put(new CommandDescriptor("logout", false, true, false, false, null),
+                (request, username) -> logout(request));
+        builtIns.put(new CommandDescriptor("batch", true, true, false, false, null),
+                (request, username) -> executeBatch(request.batch, username));
+        builtIns.put(new CommandDescriptor("load", false, true, true, false, null),
+                (request, username) -> new AbstractMap.SimpleEntry<>(load(), null));
+        // a batch has one response, so a stream can not be a part of it
+        builtIns.put(new CommandDescriptor("load_stream", false, true, false, false, null),
+                (request, username) -> new AbstractMap.SimpleEntry<>(load(), null));
+        builtIns.put(new CommandDescriptor("load_since", false, true, true, false, null),
+                (request, username) -> new AbstractMap.SimpleEntry<>(loadSince(request.arg), null));
+        for(CommandDescriptor descriptor: builtIns.keySet()){
+            registry.register(descriptor);
+        }
+        this.builtInCommands = new BuiltInCommand[registry.size()];
+        for(Map.Entry<CommandDescriptor, BuiltInCommand> builtIn: builtIns.entrySet()){
+            builtInCommands[builtIn.getKey().getId()] = builtIn.getValue();
+        }
+        this.sharedCommands = new Command[registry.size()];
+        for(CommandDescriptor descriptor: registry.getAll()){
+            if(descriptor.isStateless() && descriptor.getFactory() != null){
+                sharedCommands[descriptor.getId()] = descriptor.getFactory().create(collectionManager, null, null);
+            }
+        }
+        for(User user: userDao.getAllUsers()){
+            users.put(user.getUsername(), user);
+        }
+    }
+
+    /**
+     * drops sessions that expired and were not used since, called periodically
+     */
+    public void removeExpiredSessions(){
+        sessionManager.removeExpired();
+    }
+
+    /**
+     * @return registry with all commands of the executor
+     */
+    public CommandRegistry getRegistry(){
+        return registry;
     }
 
     public AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> executeCommand(MusicBandRequest command)
             throws IOException, NoSuchAlgorithmException, QueryExecutionException {
-        MusicBandResponse response = new MusicBandResponse();
-        if(command.name.equals("register")){
-            if(userList.stream().filter(u -> u.getUsername().equals(command.username)).findAny().orElse(null) == null){
-                User user = new User(command.username, encryptPassword(command.password));
-                userDao.addUser(user);
-                userList.add(user);
-                response.status = ResponseStatus.SUCCESS;
-                response.response = "New user successfully registered!";
-                return new AbstractMap.SimpleEntry<>(response, null);
-            }
-            else {
-                response.status = ResponseStatus.FAIL;
-                response.response = "This username is already used!";
-                return new AbstractMap.SimpleEntry<>(response, null);
+        CommandDescriptor descriptor = registry.get(command.name);
+        if(descriptor == null){
+            return fail("Unknown command " + command.name);
+        }
+        String username = null;
+        if(descriptor.isNeedsAuth()){
+            long authStart = System.nanoTime();
+            username = sessionManager.getUsername(command.token);
+            metrics.record(Stage.AUTH, authStart);
+            if(username == null){
+                return fail(command.token == null ? "Authorization failed" : "Session expired, log in again");
             }
         }
-        if(!checkUser(command.username, command.password)){
-            response.status = ResponseStatus.FAIL;
-            response.response = "Authorization failed";
-            return new AbstractMap.SimpleEntry<>(response, null);
+        long start = System.nanoTime();
+        try{
+            return execute(descriptor, command, username);
+        } finally {
+            metrics.record(Stage.EXECUTE, start);
         }
-        if(command.name.equals("login")){
-            response.status = ResponseStatus.SUCCESS;
-            response.response = "Authorization successful";
-            return new AbstractMap.SimpleEntry<>(response, null);
+    }
+
+    private AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> execute(CommandDescriptor descriptor,
+                                                                                MusicBandRequest command,
+                                                                                String username)
+            throws IOException, NoSuchAlgorithmException, QueryExecutionException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try{
+            BuiltInCommand builtIn = builtInCommands[descriptor.getId()];
+            AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> result = builtIn != null
+                    ? builtIn.execute(command, username) : executeCommandObject(descriptor, command, username);
+            failed = result.getKey().status != ResponseStatus.SUCCESS;
+            return result;
+        } finally {
+            descriptor.recordExecution(start, failed);
         }
-        if(command.name.equals("load")){
+    }
+
+    private AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> register(MusicBandRequest command)
+            throws NoSuchAlgorithmException, QueryExecutionException {
+        MusicBandResponse response = new MusicBandResponse();
+        User user = new User(command.username, encryptPassword(command.password));
+        if(users.putIfAbsent(command.username, user) == null){
+            try{
+                userDao.addUser(user);
+            } catch (QueryExecutionException ex){
+                users.remove(command.username, user);
+                throw ex;
+            }
             response.status = ResponseStatus.SUCCESS;
-            response.musicBandList = collectionManager.getAll();
+            response.response = "New user successfully registered!";
+            response.token = sessionManager.createSession(command.username);
             return new AbstractMap.SimpleEntry<>(response, null);
         }
-        Command executableCommand = getCommandObject(command, command.username);
+        return fail("This username is already used!");
+    }
+
+    private AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> login(MusicBandRequest command)
+            throws NoSuchAlgorithmException {
+        long authStart = System.nanoTime();
+        boolean valid = checkPassword(command.username, command.password);
+        metrics.record(Stage.AUTH, authStart);
+        if(!valid){
+            return fail("Authorization failed");
+        }
+        MusicBandResponse response = new MusicBandResponse();
+        response.status = ResponseStatus.SUCCESS;
+        response.response = "Authorization successful";
+        response.token = sessionManager.createSession(command.username);
+        return new AbstractMap.SimpleEntry<>(response, null);
+    }
+
+    private AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> logout(MusicBandRequest command){
+        sessionManager.invalidate(command.token);
+        MusicBandResponse response = new MusicBandResponse();
+        response.status = ResponseStatus.SUCCESS;
+        response.response = "Logged out";
+        return new AbstractMap.SimpleEntry<>(response, null);
+    }
+
+    /**
+     * executes a command created by its factory, stateless commands are shared by all requests
+     */
+    private AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> executeCommandObject(
+            CommandDescriptor descriptor, MusicBandRequest command, String username) throws IOException {
+        Command executableCommand = sharedCommands[descriptor.getId()];
+        if(executableCommand == null){
+            executableCommand = descriptor.getFactory().create(collectionManager, command, username);
+        }
+        MusicBandResponse response = new MusicBandResponse();
         try {
             String executionResult = executableCommand.execute();
             response.status = ResponseStatus.SUCCESS;
@@ -74,77 +221,169 @@ public class CommandsExecutor {
             }
             return new AbstractMap.SimpleEntry<>(response, null);
         } catch (WrongArgumentException e) {
-            response.status = ResponseStatus.FAIL;
-            response.response = e.getMessage();
-            return new AbstractMap.SimpleEntry<>(response, null);
+            return fail(e.getMessage());
         }
     }
 
-    private boolean checkUser(String username, String password) throws NoSuchAlgorithmException {
-        String encryptedPassword = encryptPassword(password);
-        synchronized (this){
-            User user = userList.stream().filter(u -> u.getUsername().equals(username) &&
-                    u.getEncryptedPass().equals(encryptedPassword)).findAny().orElse(null);
-            return user != null;
-        }
+    private static AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> fail(String message){
+        MusicBandResponse response = new MusicBandResponse();
+        response.status = ResponseStatus.FAIL;
+        response.response = message;
+        return new AbstractMap.SimpleEntry<>(response, null);
     }
 
-    private String encryptPassword(String password) throws NoSuchAlgorithmException {
-        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-        messageDigest.update(password.getBytes(StandardCharsets.UTF_8), 0, password.length());
-        return DatatypeConverter.printHexBinary(messageDigest.digest());
+    /**
+     * @return response with all bands and the version of the collection
+     */
+    private MusicBandResponse load(){
+        MusicBandResponse response = new MusicBandResponse();
+        AbstractMap.SimpleEntry<List<MusicBand>, Long> snapshot = collectionManager.getAllWithVersion();
+        response.status = ResponseStatus.SUCCESS;
+        response.musicBandList = snapshot.getKey();
+        response.version = snapshot.getValue();
+        return response;
     }
 
-
-    private Command getCommandObject(MusicBandRequest command, String username){
-        if(command == null){
-            return null;
+    /**
+     * @param arg version of the collection the client has
+     * @return response with the changes after the version in the batch field as UPDATE_ADD, UPDATE_UPDATE
+     * and UPDATE_DELETE updates, or the full snapshot as for load if these changes are not known any more
+     */
+    private MusicBandResponse loadSince(String arg){
+        long version;
+        try{
+            version = Long.parseLong(arg);
+        } catch (NumberFormatException ex){
+            MusicBandResponse response = new MusicBandResponse();
+            response.status = ResponseStatus.FAIL;
+            response.response = "Version must be an integer";
+            return response;
         }
-        String commandName = command.name;
-        String arg = command.arg;
-        MusicBand band = command.band;
-
-        if(commandName.equals("show")){
-            return new ShowCommand(collectionManager);
+        ChangeLog.Delta delta = collectionManager.getChangesSince(version);
+        if(delta == null){
+            return load();
         }
-        if(commandName.equals("update")){
-            return new UpdateCommand(arg, collectionManager, band, username);
+        MusicBandResponse response = new MusicBandResponse();
+        response.status = ResponseStatus.SUCCESS;
+        response.version = delta.getVersion();
+        response.batch = new ArrayList<>();
+        if(!delta.getAdded().isEmpty()){
+            MusicBandResponse added = new MusicBandResponse();
+            added.status = ResponseStatus.UPDATE_ADD;
+            added.musicBandList = delta.getAdded();
+            response.batch.add(added);
         }
-        if(commandName.equals("info")){
-            return new InfoCommand(collectionManager);
+        if(!delta.getUpdated().isEmpty()){
+            MusicBandResponse updated = new MusicBandResponse();
+            updated.status = ResponseStatus.UPDATE_UPDATE;
+            updated.musicBandList = delta.getUpdated();
+            response.batch.add(updated);
         }
-        if(commandName.equals("add")){
-            return new AddCommand(collectionManager, band, username);
+        if(!delta.getDeleted().isEmpty()){
+            MusicBandResponse deleted = new MusicBandResponse();
+            deleted.status = ResponseStatus.UPDATE_DELETE;
+            deleted.ids = delta.getDeleted();
+            response.batch.add(deleted);
         }
-        if(commandName.equals("remove_by_id")){
-            return new RemoveByIdCommand(collectionManager, arg, username);
+        return response;
+    }
+
+    /**
+     * executes sub-commands in order, the response has the result of every sub-command
+     * and the update combines updates of all sub-commands.
+     * A batch with mutating commands runs in one database transaction that no other change of the collection
+     * interleaves with, a read-only batch runs without it.
+     * Read-only commands of a batch see the changes of the commands before them, even before the transaction ends
+     */
+    private AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> executeBatch(List<MusicBandRequest> commands,
+                                                                                     String username) {
+        if(commands == null || commands.isEmpty()){
+            return fail("Batch is empty");
         }
-        if(commandName.equals("clear")){
-            return new ClearCommand(collectionManager, username);
+        List<MusicBandResponse> results = new ArrayList<>(commands.size());
+        List<MusicBandResponse> updates = new ArrayList<>();
+        boolean mutating = false;
+        for(MusicBandRequest subCommand: commands){
+            CommandDescriptor descriptor = registry.get(subCommand.name);
+            mutating |= descriptor != null && descriptor.isMutating();
         }
-        if(commandName.equals("save")){
-            return new SaveCommand(collectionManager);
+        Supplier<Void> execution = () -> {
+            for(MusicBandRequest subCommand: commands){
+                AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> entry =
+                        executeSubCommand(subCommand, username);
+                results.add(entry.getKey());
+                if(entry.getValue() != null){
+                    updates.add(entry.getValue());
+                }
+            }
+            return null;
+        };
+        if(mutating){
+            try {
+                collectionManager.executeInTransaction(execution);
+            } catch (QueryExecutionException e) {
+                return fail("Batch was rolled back, error when working with db!");
+            }
         }
-        if(commandName.equals("insert_at")){
-            return new InsertAtCommand(collectionManager, arg, band, username);
+        else {
+            execution.get();
         }
-        if(commandName.equals("insert_if_max")){
-            return new InsertIfMaxCommand(collectionManager, band, username);
+        MusicBandResponse response = new MusicBandResponse();
+        response.status = ResponseStatus.SUCCESS;
+        response.response = "Executed " + results.size() + " commands";
+        response.batch = results;
+        MusicBandResponse updateResponse = null;
+        if(updates.size() == 1){
+            updateResponse = updates.get(0);
         }
-        if(commandName.equals("insert_if_min")){
-            return new InsertIfMinCommand(collectionManager, band, username);
+        else if(updates.size() > 1){
+            updateResponse = new MusicBandResponse();
+            updateResponse.status = ResponseStatus.UPDATE_BATCH;
+            updateResponse.batch = updates;
+            updateResponse.version = updates.stream().mapToLong(u -> u.version).max().getAsLong();
         }
-        if(commandName.equals("count_less_than_genre")){
-            return new CountLessThanGenreCommand(collectionManager, arg);
+        return new AbstractMap.SimpleEntry<>(response, updateResponse);
+    }
+
+    private AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> executeSubCommand(MusicBandRequest command,
+                                                                                          String username) {
+        CommandDescriptor descriptor = registry.get(command.name);
+        if(descriptor == null){
+            return fail("Unknown command " + command.name);
         }
-        if(commandName.equals("filter_starts_with_description")){
-            return new FilterStartsWithDescriptionCommand(collectionManager, arg);
+        if(!descriptor.isBatchable()){
+            return fail("Command " + command.name + " can not be used in a batch");
         }
-        if(commandName.equals("print_descending")){
-            return new PrintDescendingCommand(collectionManager);
+        try {
+            return execute(descriptor, command, username);
+        } catch (IOException | NoSuchAlgorithmException | QueryExecutionException e) {
+            return fail("Error on server");
         }
-        else{
-            return null;
+    }
+
+    /**
+     * checks the password of the user, used only by login, other requests are authenticated by the session token
+     */
+    private boolean checkPassword(String username, String password) throws NoSuchAlgorithmException {
+        if(username == null || password == null){
+            return false;
         }
+        User user = users.get(username);
+        return user != null && user.getEncryptedPass().equals(encryptPassword(password));
+    }
+
+    private String encryptPassword(String password) throws NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        messageDigest.update(password.getBytes(StandardCharsets.UTF_8), 0, password.length());
+        return DatatypeConverter.printHexBinary(messageDigest.digest());
+    }
+
+    /**
+     * command executed by the executor itself
+     */
+    @FunctionalInterface
+    private interface BuiltInCommand {
+        AbstractMap.SimpleEntry<MusicBandResponse, MusicBandResponse> execute(MusicBandRequest request, String username)
+                throws IOException, NoSuchAlgorithmException, QueryExecutionException;
     }
 }
@@ -0,0 +1,83 @@
+package logic;
+
+import javax.xml.bind.DatatypeConverter;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps session tokens issued on login and register.
+ * A session expires when it is not used for the configured time, every successful lookup extends it.
+ * An expired session is dropped when it is looked up, sessions that are never looked up again
+ * are dropped by {@link #removeExpired}, which the server calls periodically
+ */
+public class SessionManager {
+    private static final int TOKEN_BYTES = 24;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlMillis;
+
+    /**
+     * @param ttlMillis time after the last use of a session when it expires
+     */
+    public SessionManager(long ttlMillis){
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * starts a new session of the user
+     * @return token of the session
+     */
+    public String createSession(String username){
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = DatatypeConverter.printHexBinary(bytes);
+        sessions.put(token, new Session(username, System.currentTimeMillis() + ttlMillis));
+        return token;
+    }
+
+    /**
+     * @return owner of the session or null if the token is unknown or expired
+     */
+    public String getUsername(String token){
+        if(token == null){
+            return null;
+        }
+        Session session = sessions.get(token);
+        if(session == null){
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if(session.expiresAt < now){
+            sessions.remove(token, session);
+            return null;
+        }
+        session.expiresAt = now + ttlMillis;
+        return session.username;
+    }
+
+    public void invalidate(String token){
+        if(token != null){
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * drops all expired sessions, takes time proportional to the amount of sessions
+     */
+    public void removeExpired(){
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> session.expiresAt < now);
+    }
+
+    private static class Session {
+        private final String username;
+        private volatile long expiresAt;
+
+        private Session(String username, long expiresAt){
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
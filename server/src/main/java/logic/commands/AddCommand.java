@@ -18,6 +18,7 @@ public class AddCommand implements Command, ChangingCollectionCommand{
     private MusicBand band;
     private String username;
     private UpdateStatus updateStatus = UpdateStatus.NOT_EXECUTED;
+    private long version;
 
     public AddCommand(CollectionManager manager, MusicBand band, String username){
         this.manager = manager;
@@ -32,7 +33,7 @@ public class AddCommand implements Command, ChangingCollectionCommand{
             throw new WrongArgumentException("Band can not be null");
         }
         try {
-            manager.addNewElementFromUser(band, username);
+            version = manager.addNewElementFromUser(band, username);
             updateStatus = UpdateStatus.UPDATED;
         } catch (QueryExecutionException e) {
             updateStatus = UpdateStatus.NOT_UPDATED;
@@ -53,6 +54,7 @@ public class AddCommand implements Command, ChangingCollectionCommand{
         updateResponse.status = ResponseStatus.UPDATE_ADD;
         updateResponse.musicBandList = new ArrayList<>();
         updateResponse.musicBandList.add(band);
+        updateResponse.version = version;
         return updateResponse;
     }
 }
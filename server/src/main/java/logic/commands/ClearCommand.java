@@ -13,6 +13,7 @@ public class ClearCommand implements Command, ChangingCollectionCommand{
     private CollectionManager collectionManager;
     private String username;
     private UpdateStatus updateStatus = UpdateStatus.NOT_EXECUTED;
+    private long version;
 
     public ClearCommand(CollectionManager collectionManager, String username){
         this.collectionManager = collectionManager;
@@ -22,7 +23,7 @@ public class ClearCommand implements Command, ChangingCollectionCommand{
     @Override
     public String execute() throws WrongArgumentException {
         try {
-            collectionManager.clearCollection(username);
+            version = collectionManager.clearCollection(username);
             updateStatus = UpdateStatus.UPDATED;
         } catch (QueryExecutionException e) {
             updateStatus = UpdateStatus.NOT_UPDATED;
@@ -42,6 +43,7 @@ public class ClearCommand implements Command, ChangingCollectionCommand{
         MusicBandResponse updateResponse = new MusicBandResponse();
         updateResponse.response = username;
         updateResponse.status = ResponseStatus.UPDATE_CLEAR;
+        updateResponse.version = version;
         return updateResponse;
     }
 }
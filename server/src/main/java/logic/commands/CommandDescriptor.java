@@ -0,0 +1,113 @@
+package logic.commands;
+
+import metrics.CommandStats;
+import metrics.ServerMetrics;
+
+/**
+ * Name, metadata and factory of a command. Descriptors get a dense id when they are added to the {@link CommandRegistry},
+ * the id indexes per-command data such as shared instances and metrics
+ */
+public class CommandDescriptor {
+    private final String name;
+    private final boolean mutating;
+    private final boolean needsAuth;
+    private final boolean batchable;
+    private final boolean stateless;
+    private final CommandFactory factory;
+    private int id = -1;
+    private final CommandStats stats;
+
+    /**
+     * @param mutating true if the command can change the collection or the database
+     * @param needsAuth true if the command is executed only for a valid session
+     * @param batchable true if the command can be a part of a batch
+     * @param stateless true if one instance of the command serves all requests
+     * @param factory factory of the command, null for commands executed by {@link logic.CommandsExecutor} itself
+     */
+    public CommandDescriptor(String name, boolean mutating, boolean needsAuth, boolean batchable, boolean stateless,
+                             CommandFactory factory){
+        this.name = name;
+        this.mutating = mutating;
+        this.needsAuth = needsAuth;
+        this.batchable = batchable;
+        this.stateless = stateless;
+        this.factory = factory;
+        this.stats = ServerMetrics.get().command(name);
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * @return id given by the registry, -1 before the descriptor is registered
+     */
+    public int getId(){
+        return id;
+    }
+
+    void setId(int id){
+        this.id = id;
+    }
+
+    /**
+     * @return true if the command can change the collection or the database
+     */
+    public boolean isMutating(){
+        return mutating;
+    }
+
+    /**
+     * @return true if the command is executed only for a valid session
+     */
+    public boolean isNeedsAuth(){
+        return needsAuth;
+    }
+
+    /**
+     * @return true if the command can be a part of a batch
+     */
+    public boolean isBatchable(){
+        return batchable;
+    }
+
+    /**
+     * @return true if the command does not depend on the request, one instance of it serves all requests
+     */
+    public boolean isStateless(){
+        return stateless;
+    }
+
+    /**
+     * @return factory of the command, null for commands executed by {@link logic.CommandsExecutor} itself
+     */
+    public CommandFactory getFactory(){
+        return factory;
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} when the execution started
+     */
+    public void recordExecution(long startNanos, boolean failed){
+        stats.record(startNanos, failed);
+    }
+
+    public long getExecutions(){
+        return stats.getExecutions();
+    }
+
+    public long getFailures(){
+        return stats.getFailures();
+    }
+
+    /**
+     * @return executions, failures and latency of the command, shared by descriptors with the same name
+     */
+    public CommandStats getStats(){
+        return stats;
+    }
+
+    public String toString(){
+        return name + (mutating ? " mutating" : " read-only") + (needsAuth ? " auth" : "");
+    }
+}
@@ -0,0 +1,15 @@
+package logic.commands;
+
+import connection.MusicBandRequest;
+import data.CollectionManager;
+
+/**
+ * Creates a command for a request
+ */
+@FunctionalInterface
+public interface CommandFactory {
+    /**
+     * @param username owner of the session, null for commands that do not need authentication
+     */
+    Command create(CollectionManager manager, MusicBandRequest request, String username);
+}
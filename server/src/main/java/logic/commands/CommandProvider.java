@@ -0,0 +1,11 @@
+package logic.commands;
+
+import java.util.List;
+
+/**
+ * Source of commands found by {@link java.util.ServiceLoader},
+ * implementations are listed in META-INF/services/logic.commands.CommandProvider
+ */
+public interface CommandProvider {
+    List<CommandDescriptor> getCommands();
+}
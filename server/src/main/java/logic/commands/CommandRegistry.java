@@ -0,0 +1,64 @@
+package logic.commands;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Commands known to the server, filled once at start and only read after that
+ */
+public class CommandRegistry {
+    private final Map<String, CommandDescriptor> byName = new HashMap<>();
+    private final List<CommandDescriptor> byId = new ArrayList<>();
+
+    /**
+     * @return registry with commands of all providers found by {@link ServiceLoader}
+     */
+    public static CommandRegistry load(){
+        CommandRegistry registry = new CommandRegistry();
+        for(CommandProvider provider: ServiceLoader.load(CommandProvider.class)){
+            for(CommandDescriptor descriptor: provider.getCommands()){
+                registry.register(descriptor);
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * adds the command and gives it the next id
+     * @throws IllegalArgumentException a command with the same name is already registered
+     */
+    public void register(CommandDescriptor descriptor){
+        if(byName.containsKey(descriptor.getName())){
+            throw new IllegalArgumentException("Command " + descriptor.getName() + " is already registered");
+        }
+        descriptor.setId(byId.size());
+        byId.add(descriptor);
+        byName.put(descriptor.getName(), descriptor);
+    }
+
+    /**
+     * @return descriptor of the command or null if there is no such command
+     */
+    public CommandDescriptor get(String name){
+        return name == null ? null : byName.get(name);
+    }
+
+    public CommandDescriptor get(int id){
+        return byId.get(id);
+    }
+
+    public int size(){
+        return byId.size();
+    }
+
+    /**
+     * @return all commands in the order of their ids
+     */
+    public List<CommandDescriptor> getAll(){
+        return Collections.unmodifiableList(byId);
+    }
+}
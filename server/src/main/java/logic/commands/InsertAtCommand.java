@@ -20,6 +20,7 @@ public class InsertAtCommand implements Command, ChangingCollectionCommand
     private MusicBand band;
     private String username;
     private UpdateStatus updateStatus = UpdateStatus.NOT_EXECUTED;
+    private long version;
 
     public InsertAtCommand(CollectionManager manager, String arg, MusicBand band, String username){
         this.arg = arg;
@@ -38,7 +39,7 @@ public class InsertAtCommand implements Command, ChangingCollectionCommand
             int index = Integer.parseInt(arg);
             if(index >= 0) {
                 try {
-                    manager.addNewElementFromUser(index, band, username);
+                    version = manager.addNewElementFromUser(index, band, username);
                     updateStatus = UpdateStatus.UPDATED;
                 } catch (QueryExecutionException e) {
                     updateStatus = UpdateStatus.NOT_UPDATED;
@@ -73,6 +74,7 @@ public class InsertAtCommand implements Command, ChangingCollectionCommand
         updateResponse.status = ResponseStatus.UPDATE_ADD;
         updateResponse.musicBandList = new ArrayList<>();
         updateResponse.musicBandList.add(band);
+        updateResponse.version = version;
         return updateResponse;
     }
 }
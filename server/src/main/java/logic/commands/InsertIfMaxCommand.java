@@ -18,6 +18,7 @@ public class InsertIfMaxCommand implements Command, ChangingCollectionCommand{
     private MusicBand band;
     private String username;
     private UpdateStatus updateStatus = UpdateStatus.NOT_EXECUTED;
+    private long version;
 
     public InsertIfMaxCommand(CollectionManager manager, MusicBand band, String username){
         this.manager = manager;
@@ -33,7 +34,8 @@ public class InsertIfMaxCommand implements Command, ChangingCollectionCommand{
             throw new WrongArgumentException("Band can not be null");
         }
         try {
-            if(manager.addIfMax(band, username)){
+            version = manager.addIfMax(band, username);
+            if(version != 0){
                 updateStatus = UpdateStatus.UPDATED;
                 return "Added new max element";
             }
@@ -57,6 +59,7 @@ public class InsertIfMaxCommand implements Command, ChangingCollectionCommand{
         updateResponse.status = ResponseStatus.UPDATE_ADD;
         updateResponse.musicBandList = new ArrayList<>();
         updateResponse.musicBandList.add(band);
+        updateResponse.version = version;
         return updateResponse;
     }
 }
@@ -18,6 +18,7 @@ public class InsertIfMinCommand implements Command, ChangingCollectionCommand{
     private MusicBand band;
     private String username;
     private UpdateStatus updateStatus;
+    private long version;
 
     public InsertIfMinCommand(CollectionManager manager, MusicBand band, String username){
         this.manager = manager;
@@ -33,7 +34,8 @@ public class InsertIfMinCommand implements Command, ChangingCollectionCommand{
             throw new WrongArgumentException("Band can not be null");
         }
         try {
-            if(manager.addIfMin(band, username)){
+            version = manager.addIfMin(band, username);
+            if(version != 0){
                 updateStatus = UpdateStatus.UPDATED;
                 return "Added new min element";
             }
@@ -57,6 +59,7 @@ public class InsertIfMinCommand implements Command, ChangingCollectionCommand{
         updateResponse.status = ResponseStatus.UPDATE_ADD;
         updateResponse.musicBandList = new ArrayList<>();
         updateResponse.musicBandList.add(band);
+        updateResponse.version = version;
         return updateResponse;
     }
 }
@@ -16,6 +16,7 @@ public class RemoveByIdCommand implements Command, ChangingCollectionCommand {
     private String arg;
     private String username;
     private UpdateStatus updateStatus = UpdateStatus.NOT_EXECUTED;
+    private long version;
     int id;
 
     public RemoveByIdCommand(CollectionManager collectionManager, String arg, String username){
@@ -39,7 +40,7 @@ public class RemoveByIdCommand implements Command, ChangingCollectionCommand {
             }
             try {
                 if(collectionManager.checkOwner(id, username)){
-                    collectionManager.removeElementById(id);
+                    version = collectionManager.removeElementById(id);
                     updateStatus = UpdateStatus.UPDATED;
                 }
                 else{
@@ -71,6 +72,7 @@ public class RemoveByIdCommand implements Command, ChangingCollectionCommand {
         updateResponse.status = ResponseStatus.UPDATE_DELETE;
         updateResponse.ids = new ArrayList<>();
         updateResponse.ids.add(id);
+        updateResponse.version = version;
         return updateResponse;
     }
 }
@@ -0,0 +1,29 @@
+package logic.commands;
+
+import collectionitems.MusicBand;
+import data.CollectionManager;
+
+import java.util.List;
+
+/**
+ * This command is for showing to the user the bands they own
+ */
+public class ShowMineCommand implements Command {
+    private CollectionManager manager;
+    private String username;
+
+    public ShowMineCommand(CollectionManager manager, String username){
+        this.manager = manager;
+        this.username = username;
+    }
+
+    @Override
+    public String execute(){
+        List<MusicBand> bands = manager.getBandsOf(username);
+        StringBuilder res = new StringBuilder("Your bands: " + bands.size());
+        for(MusicBand band: bands){
+            res.append("\n\n").append(band.toString());
+        }
+        return res.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package logic.commands;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Commands of the logic.commands package
+ */
+public class StandardCommandProvider implements CommandProvider {
+    @Override
+    public List<CommandDescriptor> getCommands(){
+        return Arrays.asList(
+                stateless("show", (manager, request, username) -> new ShowCommand(manager)),
+                stateless("info", (manager, request, username) -> new InfoCommand(manager)),
+                stateless("print_descending", (manager, request, username) -> new PrintDescendingCommand(manager)),
+                stateless("save", (manager, request, username) -> new SaveCommand(manager)),
+                readOnly("show_mine", (manager, request, username) -> new ShowMineCommand(manager, username)),
+                readOnly("count_less_than_genre",
+                        (manager, request, username) -> new CountLessThanGenreCommand(manager, request.arg)),
+                readOnly("filter_starts_with_description",
+                        (manager, request, username) -> new FilterStartsWithDescriptionCommand(manager, request.arg)),
+                mutating("add", (manager, request, username) -> new AddCommand(manager, request.band, username)),
+                mutating("update",
+                        (manager, request, username) -> new UpdateCommand(request.arg, manager, request.band, username)),
+                mutating("remove_by_id",
+                        (manager, request, username) -> new RemoveByIdCommand(manager, request.arg, username)),
+                mutating("clear", (manager, request, username) -> new ClearCommand(manager, username)),
+                mutating("insert_at",
+                        (manager, request, username) -> new InsertAtCommand(manager, request.arg, request.band, username)),
+                mutating("insert_if_max",
+                        (manager, request, username) -> new InsertIfMaxCommand(manager, request.band, username)),
+                mutating("insert_if_min",
+                        (manager, request, username) -> new InsertIfMinCommand(manager, request.band, username))
+        );
+    }
+
+    private static CommandDescriptor stateless(String name, CommandFactory factory){
+        return new CommandDescriptor(name, false, true, true, true, factory);
+    }
+
+    private static CommandDescriptor readOnly(String name, CommandFactory factory){
+        return new CommandDescriptor(name, false, true, true, false, factory);
+    }
+
+    private static CommandDescriptor mutating(String name, CommandFactory factory){
+        return new CommandDescriptor(name, true, true, true, false, factory);
+    }
+}
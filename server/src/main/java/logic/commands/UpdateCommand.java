@@ -19,6 +19,8 @@ public class UpdateCommand implements Command, ChangingCollectionCommand {
     private MusicBand band;
     private String username;
     private UpdateStatus updateStatus = UpdateStatus.NOT_EXECUTED;
+    private long version;
+    private MusicBand previousBand;
 
     public UpdateCommand(String arg, CollectionManager manager, MusicBand band, String username){
         this.manager = manager;
@@ -45,7 +47,7 @@ public class UpdateCommand implements Command, ChangingCollectionCommand {
             }
             try {
                 if(manager.checkOwner(id ,username)){
-                    manager.changeElementFromUser(id, band);
+                    version = manager.changeElementFromUser(id, band, replaced -> previousBand = replaced);
                     updateStatus = UpdateStatus.UPDATED;
                 }
                 else{
@@ -77,6 +79,9 @@ public class UpdateCommand implements Command, ChangingCollectionCommand {
         updateResponse.status = ResponseStatus.UPDATE_UPDATE;
         updateResponse.musicBandList = new ArrayList<>();
         updateResponse.musicBandList.add(band);
+        updateResponse.previousBands = new ArrayList<>();
+        updateResponse.previousBands.add(previousBand);
+        updateResponse.version = version;
         return updateResponse;
     }
 }
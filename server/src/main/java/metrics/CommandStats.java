@@ -0,0 +1,35 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and latency of one command
+ */
+public class CommandStats {
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param startNanos {@link System#nanoTime()} when the execution started
+     */
+    public void record(long startNanos, boolean failed){
+        latency.record(System.nanoTime() - startNanos);
+        executions.increment();
+        if(failed){
+            failures.increment();
+        }
+    }
+
+    public long getExecutions(){
+        return executions.sum();
+    }
+
+    public long getFailures(){
+        return failures.sum();
+    }
+
+    public LatencyHistogram getLatency(){
+        return latency;
+    }
+}
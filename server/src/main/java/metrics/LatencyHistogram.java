@@ -0,0 +1,109 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of durations in nanoseconds, in the spirit of HdrHistogram.
+ * Every power of two is split into {@link #SUB_BUCKETS} linear buckets, so a reported value is at most
+ * 1/{@link #SUB_BUCKETS} bigger than the recorded one. Recording is one atomic increment and does not allocate
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos){
+        if(nanos < 0){
+            nanos = 0;
+        }
+        counts.incrementAndGet(indexOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        long currentMax = max.get();
+        while (nanos > currentMax && !max.compareAndSet(currentMax, nanos)){
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount(){
+        return count.sum();
+    }
+
+    public long getMax(){
+        return max.get();
+    }
+
+    public long getMean(){
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : sum.sum() / recorded;
+    }
+
+    /**
+     * @param percentile percentile from 0 to 100
+     * @return upper bound of the bucket the percentile falls into, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile){
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for(int i = 0; i < BUCKETS; i++){
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if(total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += snapshot[i];
+            if(seen >= rank){
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return count, mean, p50, p90, p99, p99.9 and max in microseconds
+     */
+    public String summary(){
+        return "count=" + getCount()
+                + " mean=" + micros(getMean())
+                + " p50=" + micros(getPercentile(50))
+                + " p90=" + micros(getPercentile(90))
+                + " p99=" + micros(getPercentile(99))
+                + " p999=" + micros(getPercentile(99.9))
+                + " max=" + micros(getMax()) + "us";
+    }
+
+    static int indexOf(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the biggest value that falls into the bucket
+     */
+    static long highestValue(int index){
+        if(index < SUB_BUCKETS){
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    private static long micros(long nanos){
+        return nanos / 1000;
+    }
+}
@@ -0,0 +1,23 @@
+package metrics;
+
+import java.util.List;
+
+/**
+ * Latency of request stages and commands published through JMX
+ */
+public interface MetricsMXBean {
+    /**
+     * @return one line per stage with count, mean, percentiles and max in microseconds
+     */
+    List<String> getStages();
+
+    /**
+     * @return one line per command with executions, failures and latency
+     */
+    List<String> getCommands();
+
+    /**
+     * @return all metrics as plain text
+     */
+    String dump();
+}
@@ -0,0 +1,78 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Metrics of the server process. Counters and histograms are lock-free and never allocate when a value is recorded,
+ * so the metrics are always on
+ */
+public class ServerMetrics implements MetricsMXBean {
+    private static final ServerMetrics instance = new ServerMetrics();
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    private final Map<String, CommandStats> commands = new ConcurrentSkipListMap<>();
+
+    ServerMetrics(){
+        for(int i = 0; i < stages.length; i++){
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    public static ServerMetrics get(){
+        return instance;
+    }
+
+    /**
+     * records the time from the start until now
+     * @param startNanos {@link System#nanoTime()} when the stage started
+     */
+    public void record(Stage stage, long startNanos){
+        stages[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public LatencyHistogram getStage(Stage stage){
+        return stages[stage.ordinal()];
+    }
+
+    /**
+     * @return statistics of the command, created on the first call, callers keep the returned object
+     */
+    public CommandStats command(String name){
+        return commands.computeIfAbsent(name, key -> new CommandStats());
+    }
+
+    @Override
+    public List<String> getStages(){
+        List<String> lines = new ArrayList<>();
+        for(Stage stage: Stage.values()){
+            lines.add(stage + " " + getStage(stage).summary());
+        }
+        return lines;
+    }
+
+    @Override
+    public List<String> getCommands(){
+        List<String> lines = new ArrayList<>();
+        for(Map.Entry<String, CommandStats> command: commands.entrySet()){
+            CommandStats stats = command.getValue();
+            lines.add(command.getKey() + " failures=" + stats.getFailures() + " " + stats.getLatency().summary());
+        }
+        return lines;
+    }
+
+    @Override
+    public String dump(){
+        StringBuilder dump = new StringBuilder("Stages:\n");
+        for(String line: getStages()){
+            dump.append("  ").append(line).append('\n');
+        }
+        dump.append("Commands:\n");
+        for(String line: getCommands()){
+            dump.append("  ").append(line).append('\n');
+        }
+        return dump.toString();
+    }
+}
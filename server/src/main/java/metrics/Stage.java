@@ -0,0 +1,31 @@
+package metrics;
+
+/**
+ * Stages of request processing that are timed separately
+ */
+public enum Stage {
+    /**
+     * decoding of a request frame
+     */
+    DECODE,
+    /**
+     * session or password check
+     */
+    AUTH,
+    /**
+     * execution of a command, including its database work
+     */
+    EXECUTE,
+    /**
+     * one database call
+     */
+    DB,
+    /**
+     * encoding of a response or an update
+     */
+    ENCODE,
+    /**
+     * time a frame waits in the outbound queue of a client until it is written
+     */
+    SEND
+}
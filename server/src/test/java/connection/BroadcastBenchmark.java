@@ -0,0 +1,118 @@
+package connection;
+
+import codec.Codecs;
+import collectionitems.Album;
+import collectionitems.Coordinates;
+import collectionitems.MusicBand;
+import collectionitems.MusicGenre;
+import collectionitems.WrongArgumentException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Compares the cost of fanning out one update to many clients
+ * when the update is serialized for every client and when it is serialized once.
+ * Run it with the main method, it is not a part of the test suite.
+ * The codec is chosen with the codec system property, binary by default
+ */
+public class BroadcastBenchmark {
+    private static final int[] CLIENT_COUNTS = {10, 100, 500, 1000, 2000, 5000};
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    public static void main(String[] args) throws IOException, WrongArgumentException {
+        MusicBandResponse update = createUpdate();
+        ResponseSender responseSender = new ResponseSender(Codecs.forName(System.getProperty("codec", "binary")),
+                new BufferPool(64L * 1024 * 1024, false));
+        System.out.printf("%8s %20s %20s %10s%n", "clients", "per client, us/op", "shared, us/op", "speedup");
+        for(int clients: CLIENT_COUNTS){
+            for(int i = 0; i < WARMUP_ROUNDS; i++){
+                fanOutPerClient(responseSender, update, clients);
+                fanOutShared(responseSender, update, clients);
+            }
+            long perClient = 0;
+            long shared = 0;
+            for(int i = 0; i < MEASURED_ROUNDS; i++){
+                perClient += fanOutPerClient(responseSender, update, clients);
+                shared += fanOutShared(responseSender, update, clients);
+            }
+            double perClientMicros = perClient / 1000.0 / MEASURED_ROUNDS;
+            double sharedMicros = shared / 1000.0 / MEASURED_ROUNDS;
+            System.out.printf("%8d %20.1f %20.1f %9.1fx%n", clients, perClientMicros, sharedMicros,
+                    perClientMicros / sharedMicros);
+        }
+    }
+
+    /**
+     * @return nanoseconds spent on serializing the update for every client and queueing it
+     */
+    private static long fanOutPerClient(ResponseSender responseSender, MusicBandResponse update, int clients) throws IOException {
+        OutboundQueue[] queues = createQueues(clients);
+        long start = System.nanoTime();
+        for(OutboundQueue queue: queues){
+            Frame frame = responseSender.encode(update);
+            queue.offer(frame, true);
+            frame.release();
+        }
+        long elapsed = System.nanoTime() - start;
+        closeQueues(queues);
+        return elapsed;
+    }
+
+    /**
+     * @return nanoseconds spent on serializing the update once and queueing views of it for every client
+     */
+    private static long fanOutShared(ResponseSender responseSender, MusicBandResponse update, int clients) throws IOException {
+        OutboundQueue[] queues = createQueues(clients);
+        long start = System.nanoTime();
+        Frame frame = responseSender.encode(update);
+        for(OutboundQueue queue: queues){
+            queue.offer(frame, true);
+        }
+        frame.release();
+        long elapsed = System.nanoTime() - start;
+        closeQueues(queues);
+        return elapsed;
+    }
+
+    private static void closeQueues(OutboundQueue[] queues){
+        for(OutboundQueue queue: queues){
+            queue.close();
+        }
+    }
+
+    private static OutboundQueue[] createQueues(int clients){
+        OutboundQueue[] queues = new OutboundQueue[clients];
+        for(int i = 0; i < clients; i++){
+            queues[i] = new OutboundQueue(Long.MAX_VALUE);
+        }
+        return queues;
+    }
+
+    private static MusicBandResponse createUpdate() throws WrongArgumentException {
+        MusicBand band = new MusicBand();
+        band.setId(42);
+        band.setName("Benchmark band");
+        Coordinates coordinates = new Coordinates();
+        coordinates.setX(12.5f);
+        coordinates.setY(100f);
+        band.setCoordinates(coordinates);
+        band.setNumberOfParticipants(4);
+        band.setAlbumsCount(7);
+        band.setDescription("band used to measure the cost of broadcasting one update");
+        band.setGenre(MusicGenre.POST_PUNK);
+        Album album = new Album();
+        album.setName("Best album");
+        album.setTracks(12);
+        album.setLength(45);
+        album.setSales(1000f);
+        band.setBestAlbum(album);
+        band.setOwnerUsername("benchmark");
+        MusicBandResponse update = new MusicBandResponse();
+        update.status = ResponseStatus.UPDATE_ADD;
+        update.musicBandList = new ArrayList<>();
+        update.musicBandList.add(band);
+        return update;
+    }
+}
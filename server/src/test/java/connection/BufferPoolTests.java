@@ -0,0 +1,69 @@
+package connection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class BufferPoolTests {
+
+    @Test
+    public void testSizeClasses(){
+        BufferPool pool = new BufferPool(1024 * 1024, false);
+        assertEquals(BufferPool.MIN_SIZE, pool.acquire(1).capacity());
+        assertEquals(BufferPool.MIN_SIZE, pool.acquire(BufferPool.MIN_SIZE).capacity());
+        assertEquals(2 * BufferPool.MIN_SIZE, pool.acquire(BufferPool.MIN_SIZE + 1).capacity());
+        assertTrue(pool.acquire(5000).isDirect());
+    }
+
+    @Test
+    public void testReuse(){
+        BufferPool pool = new BufferPool(1024 * 1024, false);
+        ByteBuffer buffer = pool.acquire(3000);
+        buffer.putInt(42);
+        pool.release(buffer);
+        ByteBuffer again = pool.acquire(4096);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(1, pool.getAllocatedCount());
+        assertEquals(1, pool.getOutstandingCount());
+    }
+
+    @Test
+    public void testLeakDetection(){
+        BufferPool pool = new BufferPool(1024 * 1024, true);
+        ByteBuffer released = pool.acquire(100);
+        pool.acquire(100);
+        pool.release(released);
+        assertEquals(1, pool.getLeaks().size());
+        try{
+            pool.release(released);
+            fail("double release is expected to be detected");
+        }
+        catch (IllegalStateException ignored){
+        }
+    }
+
+    @Test
+    public void testFrameReturnsBufferAfterLastRelease(){
+        BufferPool pool = new BufferPool(1024 * 1024, true);
+        PooledOutputStream out = new PooledOutputStream(pool, 16);
+        for(int i = 0; i < 5000; i++){
+            out.write(i);
+        }
+        Frame frame = out.toFrame();
+        assertEquals(5000, frame.size());
+        frame.retain();
+        frame.release();
+        assertEquals(1, pool.getLeaks().size());
+        frame.release();
+        assertEquals(0, pool.getLeaks().size());
+    }
+}
@@ -0,0 +1,150 @@
+package connection;
+
+import codec.Codecs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class CommandsReaderTests {
+    private SocketChannel clientSide;
+    private ClientConnection serverSide;
+    private final BufferPool bufferPool = new BufferPool(1024 * 1024, true);
+    private final CommandsReader reader = new CommandsReader();
+
+    @Before
+    public void init() throws IOException {
+        try(ServerSocketChannel ssc = ServerSocketChannel.open()){
+            ssc.bind(new InetSocketAddress("127.0.0.1", 0));
+            clientSide = SocketChannel.open(ssc.getLocalAddress());
+            SocketChannel accepted = ssc.accept();
+            accepted.configureBlocking(false);
+            serverSide = new ClientConnection(accepted, null, 1024 * 1024, bufferPool);
+        }
+    }
+
+    @After
+    public void close() throws IOException {
+        clientSide.close();
+        serverSide.getChannel().close();
+        serverSide.releaseBuffers();
+        assertEquals("buffers are not returned to the pool", 0, bufferPool.getLeaks().size());
+    }
+
+    @Test
+    public void testBackToBackFrames(){
+        try{
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(frame(request("show", null)));
+            bytes.write(frame(request("info", null)));
+            clientSide.write(ByteBuffer.wrap(bytes.toByteArray()));
+            List<MusicBandRequest> requests = readAtLeast(2);
+            assertEquals("show", requests.get(0).name);
+            assertEquals("info", requests.get(1).name);
+            assertTrue(requests.get(0).receivedAt != 0);
+        }
+        catch (IOException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testSplitLargeFrame(){
+        try{
+            StringBuilder description = new StringBuilder();
+            for(int i = 0; i < 10000; i++){
+                description.append("description ");
+            }
+            byte[] frame = frame(request("filter_starts_with_description", description.toString()));
+            clientSide.write(ByteBuffer.wrap(frame, 0, 3));
+            assertEquals(0, readAtLeast(0).size());
+            clientSide.write(ByteBuffer.wrap(frame, 3, frame.length / 2));
+            assertEquals(0, readAtLeast(0).size());
+            clientSide.write(ByteBuffer.wrap(frame, 3 + frame.length / 2, frame.length - 3 - frame.length / 2));
+            List<MusicBandRequest> requests = readAtLeast(1);
+            assertEquals(1, requests.size());
+            assertEquals(description.toString(), requests.get(0).arg);
+        }
+        catch (IOException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testPingBetweenFrames(){
+        try{
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(new byte[FrameFormat.HEADER_SIZE]);
+            bytes.write(frame(request("show", null)));
+            clientSide.write(ByteBuffer.wrap(bytes.toByteArray()));
+            List<MusicBandRequest> requests = readAtLeast(1);
+            assertEquals(1, requests.size());
+            assertEquals("show", requests.get(0).name);
+            assertTrue(serverSide.takePing());
+            assertFalse(serverSide.takePing());
+        }
+        catch (IOException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testManySmallFramesDoNotGrowBuffer(){
+        try{
+            int capacity = serverSide.getReadBuffer().capacity();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] frame = frame(request("show", null));
+            int amount = 4 * capacity / frame.length;
+            for(int i = 0; i < amount; i++){
+                bytes.write(frame);
+            }
+            clientSide.write(ByteBuffer.wrap(bytes.toByteArray()));
+            assertEquals(amount, readAtLeast(amount).size());
+            assertEquals(capacity, serverSide.getReadBuffer().capacity());
+        }
+        catch (IOException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    private List<MusicBandRequest> readAtLeast(int amount) throws IOException {
+        List<MusicBandRequest> requests = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            requests.addAll(reader.readCommands(serverSide));
+        } while (requests.size() < amount && System.currentTimeMillis() < deadline);
+        return requests;
+    }
+
+    private static MusicBandRequest request(String name, String arg){
+        MusicBandRequest request = new MusicBandRequest();
+        request.name = name;
+        request.arg = arg;
+        return request;
+    }
+
+    private static byte[] frame(MusicBandRequest request) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        Codecs.encodeRequest(Codecs.BINARY, request, payload);
+        ByteBuffer frame = ByteBuffer.allocate(FrameFormat.HEADER_SIZE + payload.size());
+        frame.putInt(payload.size());
+        frame.put(payload.toByteArray());
+        return frame.array();
+    }
+}
@@ -0,0 +1,39 @@
+package connection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class ConnectionLimiterTests {
+
+    @Test
+    public void testLimits(){
+        try{
+            ConnectionLimiter limiter = new ConnectionLimiter(3, 2);
+            InetAddress first = InetAddress.getByName("10.0.0.1");
+            InetAddress second = InetAddress.getByName("10.0.0.2");
+            assertTrue(limiter.tryAcquire(first));
+            assertTrue(limiter.tryAcquire(first));
+            assertFalse(limiter.tryAcquire(first));
+            assertTrue(limiter.tryAcquire(second));
+            assertFalse(limiter.tryAcquire(second));
+            limiter.release(first);
+            assertTrue(limiter.tryAcquire(second));
+            assertEquals(2, limiter.getRejectedCount());
+            assertEquals(2, limiter.getConnectionsCount(second));
+            assertEquals(3, limiter.getConnectionsCount());
+        }
+        catch (UnknownHostException ex){
+            fail(ex.getMessage());
+        }
+    }
+}
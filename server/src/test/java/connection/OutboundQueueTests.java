@@ -0,0 +1,165 @@
+package connection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class OutboundQueueTests {
+    private final BufferPool bufferPool = new BufferPool(1024 * 1024, true);
+
+    @Test
+    public void testLimit(){
+        OutboundQueue queue = new OutboundQueue(10);
+        assertTrue(offer(queue, new byte[6]));
+        assertFalse(offer(queue, new byte[6]));
+        assertTrue(offer(queue, new byte[4]));
+        assertEquals(10, queue.getQueuedBytes());
+        queue.close();
+        assertFalse(offer(queue, new byte[1]));
+        assertEquals(0, bufferPool.getLeaks().size());
+    }
+
+    @Test
+    public void testHighWater() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue(100);
+        assertEquals(OutboundQueue.Offer.QUEUED, offer(queue, new byte[6], 10));
+        assertEquals(OutboundQueue.Offer.ABOVE_HIGH_WATER, offer(queue, new byte[6], 10));
+        assertEquals(OutboundQueue.Offer.REJECTED, offer(queue, new byte[100], 1000));
+
+        OutboundQueue shared = new OutboundQueue(Long.MAX_VALUE);
+        Thread[] threads = new Thread[8];
+        for(int i = 0; i < threads.length; i++){
+            threads[i] = new Thread(() -> {
+                for(int j = 0; j < 100; j++){
+                    offer(shared, new byte[10], 200);
+                }
+            });
+            threads[i].start();
+        }
+        for(Thread thread: threads){
+            thread.join();
+        }
+        assertEquals(200, shared.getQueuedBytes());
+        queue.close();
+        shared.close();
+        assertEquals(0, bufferPool.getLeaks().size());
+    }
+
+    @Test
+    public void testPartialWritesKeepOrder(){
+        try{
+            Pipe pipe = Pipe.open();
+            pipe.sink().configureBlocking(false);
+            pipe.source().configureBlocking(false);
+            OutboundQueue queue = new OutboundQueue(Long.MAX_VALUE);
+            int frames = 200;
+            int frameSize = 10000;
+            for(int i = 0; i < frames; i++){
+                byte[] frame = new byte[frameSize];
+                Arrays.fill(frame, (byte) i);
+                offer(queue, frame);
+            }
+            ByteBuffer received = ByteBuffer.allocate(frames * frameSize);
+            boolean drained = queue.writeTo(pipe.sink());
+            assertFalse("pipe buffer is expected to be smaller than the queued data", drained);
+            while (!drained){
+                pipe.source().read(received);
+                drained = queue.writeTo(pipe.sink());
+            }
+            while (received.hasRemaining()){
+                if(pipe.source().read(received) <= 0){
+                    break;
+                }
+            }
+            assertEquals(0, queue.getQueuedBytes());
+            assertTrue(queue.isEmpty());
+            for(int i = 0; i < frames; i++){
+                byte[] expected = new byte[frameSize];
+                Arrays.fill(expected, (byte) i);
+                byte[] actual = new byte[frameSize];
+                System.arraycopy(received.array(), i * frameSize, actual, 0, frameSize);
+                assertArrayEquals(expected, actual);
+            }
+            assertEquals("written frames are not returned to the pool", 0, bufferPool.getLeaks().size());
+        }
+        catch (IOException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testDropKeepsStartedFrame(){
+        try{
+            Pipe pipe = Pipe.open();
+            pipe.sink().configureBlocking(false);
+            pipe.source().configureBlocking(false);
+            OutboundQueue queue = new OutboundQueue(Long.MAX_VALUE);
+            byte[] started = new byte[1024 * 1024];
+            Arrays.fill(started, (byte) 1);
+            byte[] response = {2, 2, 2};
+            offer(queue, started, true);
+            offer(queue, response, false);
+            offer(queue, new byte[]{3, 3}, true);
+            assertFalse(queue.writeTo(pipe.sink()));
+            assertEquals(1, queue.dropDroppable());
+            ByteBuffer received = ByteBuffer.allocate(started.length + response.length);
+            boolean drained = false;
+            while (!drained){
+                pipe.source().read(received);
+                drained = queue.writeTo(pipe.sink());
+            }
+            while (received.hasRemaining()){
+                if(pipe.source().read(received) <= 0){
+                    break;
+                }
+            }
+            assertEquals(0, queue.getQueuedBytes());
+            assertEquals(2, received.get(received.capacity() - 1));
+            assertEquals(1, received.get(received.capacity() - response.length - 1));
+            assertEquals(0, bufferPool.getLeaks().size());
+        }
+        catch (IOException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    private OutboundQueue.Offer offer(OutboundQueue queue, byte[] content, long highWaterBytes){
+        ByteBuffer buffer = bufferPool.acquire(content.length);
+        buffer.put(content);
+        buffer.flip();
+        Frame frame = new Frame(buffer, bufferPool);
+        try{
+            return queue.offer(frame, true, highWaterBytes);
+        } finally {
+            frame.release();
+        }
+    }
+
+    private boolean offer(OutboundQueue queue, byte[] content){
+        return offer(queue, content, false);
+    }
+
+    private boolean offer(OutboundQueue queue, byte[] content, boolean droppable){
+        ByteBuffer buffer = bufferPool.acquire(content.length);
+        buffer.put(content);
+        buffer.flip();
+        Frame frame = new Frame(buffer, bufferPool);
+        try{
+            return queue.offer(frame, droppable);
+        } finally {
+            frame.release();
+        }
+    }
+}
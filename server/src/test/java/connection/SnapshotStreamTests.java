@@ -0,0 +1,117 @@
+package connection;
+
+import codec.Codecs;
+import collectionitems.MusicBand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class SnapshotStreamTests {
+    private SocketChannel clientSide;
+    private ClientConnection serverSide;
+    private final BufferPool bufferPool = new BufferPool(1024 * 1024, true);
+    private final ResponseSender responseSender = new ResponseSender(Codecs.BINARY, bufferPool);
+
+    @Before
+    public void init() throws IOException {
+        try(ServerSocketChannel ssc = ServerSocketChannel.open()){
+            ssc.bind(new InetSocketAddress("127.0.0.1", 0));
+            clientSide = SocketChannel.open(ssc.getLocalAddress());
+            SocketChannel accepted = ssc.accept();
+            accepted.configureBlocking(false);
+            Reactor reactor = new Reactor("test", null, 1024 * 1024, bufferPool, 0);
+            serverSide = new ClientConnection(accepted, reactor, 1024 * 1024, bufferPool);
+        }
+    }
+
+    @After
+    public void close() throws IOException {
+        clientSide.close();
+        serverSide.getChannel().close();
+        serverSide.releaseBuffers();
+        assertEquals("buffers are not returned to the pool", 0, bufferPool.getLeaks().size());
+    }
+
+    @Test
+    public void testChunksWaitForClient(){
+        try{
+            List<MusicBand> bands = new ArrayList<>();
+            for(int i = 1; i <= 5; i++){
+                MusicBand band = new MusicBand();
+                band.setId(i);
+                bands.add(band);
+            }
+            MusicBandResponse end = new MusicBandResponse();
+            end.status = ResponseStatus.SUCCESS;
+            end.requestId = 9;
+            end.version = 42;
+            SnapshotStream stream = new SnapshotStream(serverSide, bands, end, 2, 1, Collections.emptyList());
+
+            assertFalse(stream.pump(responseSender));
+            assertFalse(stream.tryActivate());
+            List<MusicBandResponse> received = new ArrayList<>();
+            boolean finished = false;
+            while (!finished){
+                serverSide.getOutboundQueue().writeTo(serverSide.getChannel());
+                received.add(readResponse());
+                assertTrue(stream.tryActivate());
+                finished = stream.pump(responseSender);
+            }
+            serverSide.getOutboundQueue().writeTo(serverSide.getChannel());
+            received.add(readResponse());
+            assertFalse(stream.tryActivate());
+
+            assertEquals(4, received.size());
+            List<Integer> ids = new ArrayList<>();
+            for(int i = 0; i < 3; i++){
+                assertEquals(ResponseStatus.SNAPSHOT_CHUNK, received.get(i).status);
+                assertEquals(9, received.get(i).requestId);
+                received.get(i).musicBandList.forEach(band -> ids.add(band.getId()));
+            }
+            assertEquals(Arrays.asList(1, 2, 3, 4, 5), ids);
+            MusicBandResponse last = received.get(3);
+            assertEquals(ResponseStatus.SUCCESS, last.status);
+            assertEquals(42, last.version);
+            assertNull(last.musicBandList);
+        }
+        catch (IOException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    private MusicBandResponse readResponse() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FrameFormat.HEADER_SIZE);
+        readFully(header);
+        ByteBuffer body = ByteBuffer.allocate(header.getInt(0));
+        readFully(body);
+        body.flip();
+        return Codecs.decodeResponse(body);
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()){
+            if(clientSide.read(buffer) < 0){
+                throw new IOException("Connection closed");
+            }
+        }
+    }
+}
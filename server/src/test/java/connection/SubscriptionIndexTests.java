@@ -0,0 +1,167 @@
+package connection;
+
+import collectionitems.MusicBand;
+import collectionitems.MusicGenre;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class SubscriptionIndexTests {
+
+    @Test
+    public void testMatchesByFilter(){
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        index.subscribe("all", null);
+        SubscriptionFilter owner = new SubscriptionFilter();
+        owner.owner = "alice";
+        index.subscribe("owner", owner);
+        SubscriptionFilter genre = new SubscriptionFilter();
+        genre.genre = MusicGenre.BLUES;
+        index.subscribe("genre", genre);
+        SubscriptionFilter ids = new SubscriptionFilter();
+        ids.ids = new HashSet<>(Collections.singletonList(3));
+        index.subscribe("ids", ids);
+
+        MusicBandResponse update = new MusicBandResponse();
+        update.status = ResponseStatus.UPDATE_ADD;
+        update.musicBandList = Arrays.asList(band(1, "alice", MusicGenre.SOUL), band(2, "bob", MusicGenre.BLUES),
+                band(3, "bob", MusicGenre.SOUL));
+        List<MusicBandResponse> changes = SubscriptionIndex.split(update);
+        Map<String, BitSet> matches = index.match(changes);
+
+        assertEquals(Collections.singletonList("all"), index.getUnfiltered());
+        assertEquals(3, matches.size());
+        assertEquals(bits(0), matches.get("owner"));
+        assertEquals(bits(1), matches.get("genre"));
+        assertEquals(bits(2), matches.get("ids"));
+    }
+
+    @Test
+    public void testDeletesAndClears(){
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        SubscriptionFilter owner = new SubscriptionFilter();
+        owner.owner = "alice";
+        index.subscribe("owner", owner);
+        SubscriptionFilter ids = new SubscriptionFilter();
+        ids.ids = new HashSet<>(Collections.singletonList(3));
+        index.subscribe("ids", ids);
+
+        MusicBandResponse delete = new MusicBandResponse();
+        delete.status = ResponseStatus.UPDATE_DELETE;
+        delete.ids = Arrays.asList(3, 4);
+        MusicBandResponse clear = new MusicBandResponse();
+        clear.status = ResponseStatus.UPDATE_CLEAR;
+        clear.response = "bob";
+        MusicBandResponse update = new MusicBandResponse();
+        update.status = ResponseStatus.UPDATE_BATCH;
+        update.batch = Arrays.asList(delete, clear);
+        Map<String, BitSet> matches = index.match(SubscriptionIndex.split(update));
+
+        assertEquals(bits(0, 1), matches.get("owner"));
+        assertEquals(bits(0, 2), matches.get("ids"));
+    }
+
+    @Test
+    public void testSelectMergesChanges(){
+        MusicBandResponse added = new MusicBandResponse();
+        added.status = ResponseStatus.UPDATE_ADD;
+        added.musicBandList = Arrays.asList(band(1, "a", null), band(2, "a", null), band(3, "a", null));
+        added.version = 5;
+        MusicBandResponse deleted = new MusicBandResponse();
+        deleted.status = ResponseStatus.UPDATE_DELETE;
+        deleted.ids = new ArrayList<>(Arrays.asList(7, 8));
+        deleted.version = 6;
+        MusicBandResponse update = new MusicBandResponse();
+        update.status = ResponseStatus.UPDATE_BATCH;
+        update.batch = Arrays.asList(added, deleted);
+        update.version = 6;
+        List<MusicBandResponse> changes = SubscriptionIndex.split(update);
+
+        MusicBandResponse selected = SubscriptionIndex.select(update, changes, bits(0, 2));
+        assertEquals(ResponseStatus.UPDATE_ADD, selected.status);
+        assertEquals(Arrays.asList(added.musicBandList.get(0), added.musicBandList.get(2)), selected.musicBandList);
+
+        selected = SubscriptionIndex.select(update, changes, bits(1, 4));
+        assertEquals(ResponseStatus.UPDATE_BATCH, selected.status);
+        assertEquals(6, selected.version);
+        assertEquals(Collections.singletonList(8), selected.batch.get(1).ids);
+        assertEquals(1, changes.get(4).ids.size());
+    }
+
+    @Test
+    public void testUpdateLeavingFilterIsDelete(){
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        SubscriptionFilter genre = new SubscriptionFilter();
+        genre.genre = MusicGenre.BLUES;
+        index.subscribe("blues", genre);
+        SubscriptionFilter soul = new SubscriptionFilter();
+        soul.genre = MusicGenre.SOUL;
+        index.subscribe("soul", soul);
+
+        MusicBandResponse update = new MusicBandResponse();
+        update.status = ResponseStatus.UPDATE_UPDATE;
+        update.musicBandList = Collections.singletonList(band(1, "a", MusicGenre.SOUL));
+        update.previousBands = Collections.singletonList(band(1, "a", MusicGenre.BLUES));
+        update.version = 3;
+        List<MusicBandResponse> changes = SubscriptionIndex.split(update);
+        Map<String, BitSet> matches = index.match(changes);
+
+        assertEquals(bits(0), matches.get("soul"));
+        assertEquals(bits(1), matches.get("blues"));
+        MusicBandResponse selected = SubscriptionIndex.select(update, changes, matches.get("blues"));
+        assertEquals(ResponseStatus.UPDATE_DELETE, selected.status);
+        assertEquals(Collections.singletonList(1), selected.ids);
+        assertEquals(3, selected.version);
+    }
+
+    @Test
+    public void testUnsubscribe(){
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        SubscriptionFilter filter = new SubscriptionFilter();
+        filter.minX = 1f;
+        filter.maxX = 10f;
+        filter.minY = 0f;
+        filter.maxY = 10f;
+        index.subscribe("rectangle", filter);
+        MusicBandResponse update = new MusicBandResponse();
+        update.status = ResponseStatus.UPDATE_UPDATE;
+        update.musicBandList = Collections.singletonList(band(1, "a", null));
+        assertTrue(index.match(SubscriptionIndex.split(update)).isEmpty());
+
+        index.subscribe("rectangle", new SubscriptionFilter());
+        assertEquals(0, index.getFilteredCount());
+        index.unsubscribe("rectangle");
+        assertFalse(index.getUnfiltered().contains("rectangle"));
+        assertNull(index.match(SubscriptionIndex.split(update)).get("rectangle"));
+    }
+
+    private static MusicBand band(int id, String owner, MusicGenre genre){
+        MusicBand band = new MusicBand();
+        band.setId(id);
+        band.setOwnerUsername(owner);
+        band.setGenre(genre);
+        return band;
+    }
+
+    private static BitSet bits(int... indexes){
+        BitSet bits = new BitSet();
+        for(int index: indexes){
+            bits.set(index);
+        }
+        return bits;
+    }
+}
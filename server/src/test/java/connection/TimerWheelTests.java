@@ -0,0 +1,48 @@
+package connection;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class TimerWheelTests {
+
+    @Test
+    public void testExpiresAfterDeadline(){
+        TimerWheel<String> wheel = new TimerWheel<>(10, 100, 1000);
+        wheel.schedule("a", 1025);
+        wheel.schedule("b", 1050);
+        List<String> expired = new ArrayList<>();
+        wheel.advance(1025, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advance(1030, expired::add);
+        assertEquals(Collections.singletonList("a"), expired);
+        wheel.advance(1200, expired::add);
+        assertEquals(Arrays.asList("a", "b"), expired);
+    }
+
+    @Test
+    public void testRescheduleFromConsumer(){
+        TimerWheel<String> wheel = new TimerWheel<>(10, 100, 0);
+        wheel.schedule("a", 5);
+        List<Long> times = new ArrayList<>();
+        long[] now = {0};
+        for(now[0] = 10; now[0] <= 100; now[0] += 10){
+            wheel.advance(now[0], item -> {
+                times.add(now[0]);
+                if(times.size() < 3){
+                    wheel.schedule(item, now[0] + 30);
+                }
+            });
+        }
+        assertEquals(Arrays.asList(10L, 50L, 90L), times);
+    }
+}
@@ -0,0 +1,157 @@
+package connection;
+
+import collectionitems.MusicBand;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class UpdateCoalescerTests {
+    private final List<MusicBandResponse> sent = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void testMergesChangesPerBand(){
+        UpdateCoalescer coalescer = new UpdateCoalescer(60000, 1000, sent::add, Runnable::run);
+        MusicBand updatedOld = band(1);
+        coalescer.submit(update(ResponseStatus.UPDATE_UPDATE, band(1), 2));
+        coalescer.submit(update(ResponseStatus.UPDATE_UPDATE, updatedOld, 3));
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(2), 4));
+        coalescer.submit(delete(2, 5));
+        MusicBand addedThenUpdated = band(3);
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(3), 6));
+        coalescer.submit(update(ResponseStatus.UPDATE_UPDATE, addedThenUpdated, 7));
+        coalescer.submit(delete(4, 8));
+        coalescer.flush();
+
+        assertEquals(1, sent.size());
+        MusicBandResponse combined = sent.get(0);
+        assertEquals(ResponseStatus.UPDATE_BATCH, combined.status);
+        assertEquals(8, combined.version);
+        assertEquals(3, combined.batch.size());
+        assertEquals(ResponseStatus.UPDATE_ADD, combined.batch.get(0).status);
+        assertSame(addedThenUpdated, combined.batch.get(0).musicBandList.get(0));
+        assertEquals(1, combined.batch.get(0).musicBandList.size());
+        assertSame(updatedOld, combined.batch.get(1).musicBandList.get(0));
+        assertEquals(Collections.singletonList(4), combined.batch.get(2).ids);
+    }
+
+    @Test
+    public void testLatestVersionWins(){
+        UpdateCoalescer coalescer = new UpdateCoalescer(60000, 1000, sent::add, Runnable::run);
+        MusicBand latest = band(1);
+        coalescer.submit(update(ResponseStatus.UPDATE_UPDATE, latest, 10));
+        coalescer.submit(update(ResponseStatus.UPDATE_UPDATE, band(1), 9));
+        coalescer.flush();
+        assertSame(latest, sent.get(0).musicBandList.get(0));
+    }
+
+    @Test
+    public void testClearKeepsItsPlace(){
+        UpdateCoalescer coalescer = new UpdateCoalescer(60000, 1000, sent::add, Runnable::run);
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(1), 1));
+        MusicBandResponse clear = new MusicBandResponse();
+        clear.status = ResponseStatus.UPDATE_CLEAR;
+        clear.response = "user";
+        coalescer.submit(clear);
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(2), 3));
+        coalescer.flush();
+        List<ResponseStatus> statuses = new ArrayList<>();
+        sent.get(0).batch.forEach(u -> statuses.add(u.status));
+        assertEquals(Arrays.asList(ResponseStatus.UPDATE_ADD, ResponseStatus.UPDATE_CLEAR, ResponseStatus.UPDATE_ADD),
+                statuses);
+    }
+
+    @Test
+    public void testFlushTriggers() throws InterruptedException {
+        UpdateCoalescer coalescer = new UpdateCoalescer(50, 3, sent::add, Runnable::run);
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(1), 1));
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(2), 2));
+        assertTrue(sent.isEmpty());
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(3), 3));
+        assertEquals("max events reached", 1, sent.size());
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(4), 4));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < 2 && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        assertEquals("window elapsed", 2, sent.size());
+
+        UpdateCoalescer disabled = new UpdateCoalescer(0, 3, sent::add, Runnable::run);
+        disabled.submit(delete(1, 5));
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    public void testMaxEventsFlushCancelsWindow() throws InterruptedException {
+        UpdateCoalescer coalescer = new UpdateCoalescer(400, 2, sent::add, Runnable::run);
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(1), 1));
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(2), 2));
+        assertEquals(1, sent.size());
+        Thread.sleep(200);
+        coalescer.submit(update(ResponseStatus.UPDATE_ADD, band(3), 3));
+        Thread.sleep(300);
+        assertEquals("flushed by the timer of the previous window", 1, sent.size());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < 2 && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testSubmitDoesNotWaitForSink() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        UpdateCoalescer coalescer = new UpdateCoalescer(0, 3, update -> {
+            try{
+                release.await();
+            } catch (InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+            sent.add(update);
+        });
+        coalescer.submit(delete(1, 1));
+        coalescer.submit(delete(2, 2));
+        assertTrue(sent.isEmpty());
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < 2 && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        assertEquals(2, sent.size());
+        assertEquals(1, sent.get(0).version);
+        assertEquals(2, sent.get(1).version);
+    }
+
+    private static MusicBandResponse update(ResponseStatus status, MusicBand band, long version){
+        MusicBandResponse update = new MusicBandResponse();
+        update.status = status;
+        update.musicBandList = new ArrayList<>(Collections.singletonList(band));
+        update.version = version;
+        return update;
+    }
+
+    private static MusicBandResponse delete(int id, long version){
+        MusicBandResponse update = new MusicBandResponse();
+        update.status = ResponseStatus.UPDATE_DELETE;
+        update.ids = new ArrayList<>(Collections.singletonList(id));
+        update.version = version;
+        return update;
+    }
+
+    private static MusicBand band(int id){
+        MusicBand band = new MusicBand();
+        band.setId(id);
+        return band;
+    }
+}
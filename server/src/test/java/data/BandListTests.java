@@ -0,0 +1,231 @@
+package data;
+
+import collectionitems.MusicBand;
+import collectionitems.MusicGenre;
+import collectionitems.WrongArgumentException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class BandListTests {
+
+    @Test
+    public void testKeepsOrderAndIndex(){
+        BandList list = new BandList();
+        MusicBand first = band(1);
+        MusicBand second = band(2);
+        MusicBand third = band(3);
+        list.add(first);
+        list.add(second);
+        list.add(third);
+        assertSame(second, list.remove(2));
+        assertNull(list.remove(2));
+        MusicBand inserted = band(4);
+        list.add(1, inserted);
+        MusicBand updated = band(1);
+        list.add(updated);
+        assertEquals(3, list.size());
+        assertArrayEquals(new MusicBand[]{inserted, third, updated}, list.toArray());
+        assertSame(updated, list.get(1));
+        assertSame(third, list.get(3));
+        assertNull(list.get(2));
+    }
+
+    @Test
+    public void testMatchesReferenceList(){
+        BandList list = new BandList();
+        List<MusicBand> expected = new ArrayList<>();
+        Random random = new Random(7);
+        for(int i = 0; i < 20000; i++){
+            int id = random.nextInt(500) + 1;
+            int action = random.nextInt(4);
+            if(action == 0){
+                MusicBand removed = list.remove(id);
+                MusicBand reference = find(expected, id);
+                assertSame(reference, removed);
+                expected.removeIf(band -> band == reference);
+            }
+            else if(action == 1 && !expected.isEmpty()){
+                removeById(expected, id);
+                int position = random.nextInt(expected.size() + 1);
+                MusicBand band = band(id);
+                list.add(position, band);
+                expected.add(position, band);
+            }
+            else {
+                removeById(expected, id);
+                MusicBand band = band(id);
+                list.add(band);
+                expected.add(band);
+            }
+            assertEquals(expected.size(), list.size());
+        }
+        assertIdentical(expected, Arrays.asList(list.toArray()));
+        List<MusicBand> iterated = new ArrayList<>();
+        list.forEach(iterated::add);
+        assertIdentical(expected, iterated);
+        for(MusicBand band: expected){
+            assertSame(band, list.get(band.getId()));
+        }
+    }
+
+    @Test
+    public void testFrozenListsKeepTheirBands(){
+        BandList list = new BandList();
+        List<MusicBand> expected = new ArrayList<>();
+        List<List<MusicBand>> frozen = new ArrayList<>();
+        List<List<MusicBand>> frozenExpected = new ArrayList<>();
+        Random random = new Random(11);
+        for(int i = 0; i < 20000; i++){
+            int id = random.nextInt(2000) + 1;
+            int action = random.nextInt(5);
+            if(action < 2){
+                MusicBand removed = list.remove(id);
+                expected.removeIf(band -> band == removed);
+            }
+            else if(action == 2 && !expected.isEmpty()){
+                removeById(expected, id);
+                int position = random.nextInt(expected.size() + 1);
+                MusicBand band = band(id);
+                list.add(position, band);
+                expected.add(position, band);
+            }
+            else {
+                removeById(expected, id);
+                MusicBand band = band(id);
+                list.add(band);
+                expected.add(band);
+            }
+            if(i % 500 == 0){
+                frozen.add(list.freeze());
+                frozenExpected.add(new ArrayList<>(expected));
+            }
+        }
+        frozen.add(list.freeze());
+        frozenExpected.add(expected);
+        for(int i = 0; i < frozen.size(); i++){
+            List<MusicBand> bands = frozen.get(i);
+            assertIdentical(frozenExpected.get(i), bands);
+            assertIdentical(frozenExpected.get(i), new ArrayList<>(bands));
+        }
+        list.clear();
+        assertIdentical(expected, frozen.get(frozen.size() - 1));
+    }
+
+    @Test
+    public void testIndexesOwners(){
+        BandList list = new BandList();
+        MusicBand first = band(1, "first");
+        MusicBand second = band(2, "second");
+        MusicBand third = band(3, "first");
+        list.add(first);
+        list.add(second);
+        list.add(0, third);
+        assertEquals(Arrays.asList(first, third), list.getOwned("first"));
+        list.remove(1);
+        assertEquals(Collections.singletonList(third), list.getOwned("first"));
+        assertEquals(Collections.singletonList(3), list.removeOwned("first"));
+        assertTrue(list.getOwned("first").isEmpty());
+        assertTrue(list.removeOwned("first").isEmpty());
+        assertArrayEquals(new MusicBand[]{second}, list.toArray());
+        assertSame(second, list.getOwned("second").get(0));
+    }
+
+    @Test
+    public void testTracksMaxAndMin() throws WrongArgumentException {
+        BandList list = new BandList();
+        assertNull(list.max());
+        assertNull(list.min());
+        MusicBand small = band(1);
+        small.setAlbumsCount(2);
+        MusicBand big = band(2);
+        big.setAlbumsCount(10);
+        MusicBand sameAsBig = band(3);
+        sameAsBig.setAlbumsCount(10);
+        list.add(small);
+        list.add(big);
+        list.add(sameAsBig);
+        assertSame(small, list.min());
+        assertEquals(10, list.max().getAlbumsCount());
+        list.remove(2);
+        assertSame(sameAsBig, list.max());
+        list.remove(1);
+        assertSame(sameAsBig, list.min());
+        list.removeOwned("owner");
+        assertNull(list.max());
+    }
+
+    @Test
+    public void testCountsGenres(){
+        BandList list = new BandList();
+        MusicBand soul = band(1);
+        soul.setGenre(MusicGenre.SOUL);
+        MusicBand punk = band(2);
+        punk.setGenre(MusicGenre.PUNK_ROCK);
+        MusicBand britPop = band(3);
+        britPop.setGenre(MusicGenre.BRIT_POP);
+        list.add(soul);
+        list.add(punk);
+        list.add(britPop);
+        list.add(band(4));
+        int[] lesser = list.countLesserGenres();
+        assertEquals(0, lesser[MusicGenre.SOUL.ordinal()]);
+        assertEquals(1, lesser[MusicGenre.PUNK_ROCK.ordinal()]);
+        assertEquals(2, lesser[MusicGenre.POST_PUNK.ordinal()]);
+        assertEquals(2, lesser[MusicGenre.BRIT_POP.ordinal()]);
+        list.remove(1);
+        MusicBand updated = band(2);
+        updated.setGenre(MusicGenre.BLUES);
+        list.add(updated);
+        lesser = list.countLesserGenres();
+        assertEquals(1, lesser[MusicGenre.PUNK_ROCK.ordinal()]);
+        assertEquals(1, lesser[MusicGenre.BRIT_POP.ordinal()]);
+    }
+
+    /**
+     * bands of the tests are equal to each other, so they are removed by id
+     */
+    private static void removeById(List<MusicBand> bands, int id){
+        bands.removeIf(band -> band.getId() == id);
+    }
+
+    private static MusicBand find(List<MusicBand> bands, int id){
+        for(MusicBand band: bands){
+            if(band.getId() == id){
+                return band;
+            }
+        }
+        return null;
+    }
+
+    private static void assertIdentical(List<MusicBand> expected, List<MusicBand> actual){
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++){
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
+    private static MusicBand band(int id){
+        return band(id, "owner");
+    }
+
+    private static MusicBand band(int id, String owner){
+        MusicBand band = new MusicBand();
+        band.setId(id);
+        band.setOwnerUsername(owner);
+        return band;
+    }
+}
@@ -0,0 +1,89 @@
+package data;
+
+import collectionitems.MusicBand;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class ChangeLogTests {
+
+    @Test
+    public void testMergesChangesOfOneBand(){
+        ChangeLog log = new ChangeLog(100, 1000);
+        log.recordAdd(band(1));
+        long since = log.getVersion();
+        MusicBand updated = band(1);
+        log.recordUpdate(updated);
+        log.recordAdd(band(2));
+        log.recordDelete(2);
+        MusicBand added = band(3);
+        log.recordAdd(added);
+        MusicBand addedAndUpdated = band(3);
+        log.recordUpdate(addedAndUpdated);
+        log.recordDelete(4);
+
+        ChangeLog.Delta delta = log.since(since);
+        assertNotNull(delta);
+        assertEquals(log.getVersion(), delta.getVersion());
+        assertEquals(1, delta.getAdded().size());
+        assertSame(addedAndUpdated, delta.getAdded().get(0));
+        assertEquals(1, delta.getUpdated().size());
+        assertSame(updated, delta.getUpdated().get(0));
+        assertEquals(Collections.singletonList(4), delta.getDeleted());
+    }
+
+    @Test
+    public void testNoChanges(){
+        ChangeLog log = new ChangeLog(100, 1000);
+        log.recordAdd(band(1));
+        ChangeLog.Delta delta = log.since(log.getVersion());
+        assertTrue(delta.getAdded().isEmpty() && delta.getUpdated().isEmpty() && delta.getDeleted().isEmpty());
+    }
+
+    @Test
+    public void testChangesUntilVersion(){
+        ChangeLog log = new ChangeLog(100, 1000);
+        log.recordAdd(band(1));
+        long until = log.getVersion();
+        log.recordAdd(band(2));
+
+        ChangeLog.Delta delta = log.since(1000, until);
+        assertEquals(until, delta.getVersion());
+        assertEquals(1, delta.getAdded().size());
+        assertEquals(1, delta.getAdded().get(0).getId());
+        assertNull("version after the last one", log.since(until, log.getVersion() + 1));
+        assertNull("version after the end", log.since(log.getVersion(), until));
+    }
+
+    @Test
+    public void testTruncatedLog(){
+        ChangeLog log = new ChangeLog(2, 1000);
+        log.recordAdd(band(1));
+        log.recordAdd(band(2));
+        log.recordAdd(band(3));
+        assertNull("first change is dropped", log.since(1000));
+        assertEquals(Arrays.asList(2, 3), Arrays.asList(log.since(1001).getAdded().get(0).getId(),
+                log.since(1001).getAdded().get(1).getId()));
+        assertNull("version of a previous run", log.since(10));
+        assertNull("version from the future", log.since(log.getVersion() + 1));
+        log.reset();
+        assertNull(log.since(1002));
+        assertNotNull(log.since(log.getVersion()));
+    }
+
+    private static MusicBand band(int id){
+        MusicBand band = new MusicBand();
+        band.setId(id);
+        return band;
+    }
+}
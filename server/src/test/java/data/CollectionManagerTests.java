@@ -0,0 +1,319 @@
+package data;
+
+import collectionitems.MusicBand;
+import collectionitems.WrongArgumentException;
+import data.database.QueryExecutionException;
+import data.database.bands.MusicBandStorage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class CollectionManagerTests {
+
+    @Test
+    public void testFailedRecheckRemovesInsertedBand(){
+        StubMusicBandDao dao = new StubMusicBandDao();
+        try{
+            CollectionManager manager = new CollectionManager(dao);
+            MusicBand bigger = band(10);
+            // a bigger band of another owner is added after the band passed the check against the snapshot
+            dao.onInsert = () -> {
+                dao.onInsert = null;
+                manager.addNewElementFromUser(bigger, "bob");
+            };
+            MusicBand band = band(5);
+            assertEquals(0, manager.addIfMax(band, "alice"));
+
+            assertEquals(Collections.singletonList("remove " + band.getId()), dao.callsAfter("add " + bigger.getId()));
+            assertNull(manager.findElementById(band.getId()));
+            assertEquals(Collections.singletonList(bigger), manager.getAll());
+        } catch (QueryExecutionException | WrongArgumentException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testChangesOfOneOwnerAreSerialized() throws InterruptedException {
+        StubMusicBandDao dao = new StubMusicBandDao();
+        try{
+            CollectionManager manager = new CollectionManager(dao);
+            MusicBand band = band(5);
+            long added = manager.addNewElementFromUser(band, "alice");
+            CountDownLatch updating = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            dao.onChange = () -> {
+                updating.countDown();
+                release.await();
+            };
+            AtomicReference<Exception> error = new AtomicReference<>();
+            Thread update = new Thread(() -> {
+                try{
+                    manager.changeElementFromUser(band.getId(), band(7));
+                } catch (Exception ex){
+                    error.set(ex);
+                }
+            });
+            update.start();
+            assertTrue(updating.await(5, TimeUnit.SECONDS));
+            Thread remove = new Thread(() -> {
+                try{
+                    manager.removeElementById(band.getId());
+                } catch (Exception ex){
+                    error.set(ex);
+                }
+            });
+            remove.start();
+            Thread.sleep(200);
+            assertFalse("remove waits for the owner lock", dao.calls().contains("remove " + band.getId()));
+
+            release.countDown();
+            update.join(5000);
+            remove.join(5000);
+            assertNull(error.get());
+            assertEquals(Arrays.asList("change " + band.getId(), "remove " + band.getId()),
+                    dao.callsAfter("add " + band.getId()));
+            assertTrue(manager.getAll().isEmpty());
+            ChangeLog.Delta delta = manager.getChangesSince(added);
+            assertEquals(Collections.singletonList(band.getId()), delta.getDeleted());
+            assertTrue(delta.getUpdated().isEmpty());
+        } catch (QueryExecutionException | WrongArgumentException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testCompensatedInsertIsNeverPublished(){
+        StubMusicBandDao dao = new StubMusicBandDao();
+        try{
+            CollectionManager manager = new CollectionManager(dao);
+            long initial = manager.getVersion();
+            MusicBand band = band(5);
+            List<CollectionSnapshot> snapshots = new ArrayList<>();
+            // a smaller band of another owner is added after the band passed the check against the snapshot
+            dao.onInsert = () -> {
+                dao.onInsert = null;
+                snapshots.add(manager.getSnapshot());
+                manager.addNewElementFromUser(band(1), "bob");
+                snapshots.add(manager.getSnapshot());
+            };
+            dao.onRemove = () -> snapshots.add(manager.getSnapshot());
+            assertEquals(0, manager.addIfMin(band, "alice"));
+            snapshots.add(manager.getSnapshot());
+
+            assertEquals(4, snapshots.size());
+            for(CollectionSnapshot snapshot: snapshots){
+                for(MusicBand published: snapshot.getBands()){
+                    assertFalse(published.getId() == band.getId());
+                }
+            }
+            ChangeLog.Delta delta = manager.getChangesSince(initial);
+            assertEquals(1, delta.getAdded().size());
+            assertFalse(delta.getAdded().get(0).getId() == band.getId());
+        } catch (QueryExecutionException | WrongArgumentException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testTransactionReadsItsOwnChanges(){
+        StubMusicBandDao dao = new StubMusicBandDao();
+        try{
+            CollectionManager manager = new CollectionManager(dao);
+            MusicBand band = band(3);
+            List<MusicBand> seen = manager.executeInTransaction(() -> {
+                try{
+                    manager.addNewElementFromUser(band, "alice");
+                } catch (QueryExecutionException ex){
+                    throw new IllegalStateException(ex);
+                }
+                assertTrue("not published before the end", manager.getSnapshot().getBands().isEmpty());
+                assertEquals(1, manager.getCollectionSize());
+                return manager.getAll();
+            });
+            assertEquals(Collections.singletonList(band), seen);
+            assertEquals(Collections.singletonList(band), manager.getSnapshot().getBands());
+        } catch (QueryExecutionException | WrongArgumentException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testFailedRollbackIsNotPublished(){
+        StubMusicBandDao dao = new StubMusicBandDao();
+        try{
+            CollectionManager manager = new CollectionManager(dao);
+            MusicBand band = band(3);
+            dao.failRollback = true;
+            try{
+                manager.executeInTransaction(() -> {
+                    try{
+                        manager.addNewElementFromUser(band, "alice");
+                    } catch (QueryExecutionException ex){
+                        throw new IllegalStateException(ex);
+                    }
+                    throw new IllegalArgumentException("action failed");
+                });
+                fail("action failure is thrown");
+            } catch (IllegalArgumentException ex){
+                assertEquals(1, ex.getSuppressed().length);
+            }
+            assertTrue(manager.getAll().isEmpty());
+            assertNull(manager.findElementById(band.getId()));
+        } catch (QueryExecutionException | WrongArgumentException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testFailedCommitRestoresCommittedState(){
+        StubMusicBandDao dao = new StubMusicBandDao();
+        try{
+            CollectionManager manager = new CollectionManager(dao);
+            MusicBand kept = band(1);
+            manager.addNewElementFromUser(kept, "alice");
+            dao.failCommit = true;
+            dao.failLoad = true;
+            try{
+                manager.executeInTransaction(() -> {
+                    try{
+                        return manager.addNewElementFromUser(band(2), "alice");
+                    } catch (QueryExecutionException | WrongArgumentException ex){
+                        throw new IllegalStateException(ex);
+                    }
+                });
+                fail("failed commit is thrown");
+            } catch (QueryExecutionException ex){
+                assertEquals(Collections.singletonList(kept), manager.getAll());
+                assertEquals(Collections.singletonList(kept), manager.getBandsOf("alice"));
+            }
+        } catch (QueryExecutionException | WrongArgumentException ex){
+            fail(ex.getMessage());
+        }
+    }
+
+    private static MusicBand band(long albumsCount) throws WrongArgumentException {
+        MusicBand band = new MusicBand();
+        band.setAlbumsCount(albumsCount);
+        return band;
+    }
+
+    @FunctionalInterface
+    private interface Hook {
+        void run() throws Exception;
+    }
+
+    /**
+     * keeps no bands, gives ids in order and records its calls
+     */
+    private static class StubMusicBandDao implements MusicBandStorage {
+        private final List<String> calls = new ArrayList<>();
+        private int nextId = 1;
+        private volatile Hook onInsert;
+        private volatile Hook onChange;
+        private volatile Hook onRemove;
+        private volatile boolean failRollback;
+        private volatile boolean failCommit;
+        private volatile boolean failLoad;
+
+        synchronized List<String> calls(){
+            return new ArrayList<>(calls);
+        }
+
+        synchronized List<String> callsAfter(String call){
+            return new ArrayList<>(calls.subList(calls.indexOf(call) + 1, calls.size()));
+        }
+
+        @Override
+        public List<MusicBand> getBandsFromDb() throws QueryExecutionException {
+            if(failLoad){
+                throw new QueryExecutionException("Could not load bands");
+            }
+            return new ArrayList<>();
+        }
+
+        @Override
+        public int addBandToDb(MusicBand band, String owner){
+            int id;
+            synchronized (this){
+                id = nextId++;
+                calls.add("add " + id);
+            }
+            band.setId(id);
+            run(onInsert);
+            return id;
+        }
+
+        @Override
+        public void removeBandById(int id){
+            synchronized (this){
+                calls.add("remove " + id);
+            }
+            run(onRemove);
+        }
+
+        @Override
+        public void changeBandById(int id, MusicBand band){
+            run(onChange);
+            synchronized (this){
+                calls.add("change " + id);
+            }
+        }
+
+        @Override
+        public void clearUserBands(String username){
+            synchronized (this){
+                calls.add("clear " + username);
+            }
+        }
+
+        @Override
+        public boolean isOwner(int id, String username){
+            return true;
+        }
+
+        @Override
+        public void beginTransaction(){
+        }
+
+        @Override
+        public boolean commitTransaction() throws QueryExecutionException {
+            if(failCommit){
+                throw new QueryExecutionException("Could not roll back transaction");
+            }
+            return true;
+        }
+
+        @Override
+        public void rollbackTransaction() throws QueryExecutionException {
+            if(failRollback){
+                throw new QueryExecutionException("Could not roll back transaction");
+            }
+        }
+
+        private static void run(Hook hook){
+            if(hook == null){
+                return;
+            }
+            try{
+                hook.run();
+            } catch (Exception ex){
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package logic;
+
+import logic.commands.CommandDescriptor;
+import logic.commands.CommandRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class CommandRegistryTests {
+
+    @Test
+    public void testStandardCommandsAreFound(){
+        CommandRegistry registry = CommandRegistry.load();
+        assertEquals(14, registry.size());
+        CommandDescriptor show = registry.get("show");
+        assertTrue(show.isStateless());
+        assertFalse(show.isMutating());
+        assertTrue(show.isNeedsAuth());
+        CommandDescriptor showMine = registry.get("show_mine");
+        assertFalse(showMine.isStateless());
+        assertTrue(showMine.isNeedsAuth());
+        CommandDescriptor add = registry.get("add");
+        assertTrue(add.isMutating());
+        assertFalse(add.isStateless());
+        assertSame(add, registry.get(add.getId()));
+        assertNull(registry.get("unknown"));
+        assertNull(registry.get((String) null));
+    }
+
+    @Test
+    public void testDuplicateName(){
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(new CommandDescriptor("ping", false, false, true, true, null));
+        try{
+            registry.register(new CommandDescriptor("ping", false, false, true, true, null));
+            fail("Duplicate command is registered");
+        }
+        catch (IllegalArgumentException ex){
+            assertEquals(0, registry.get("ping").getId());
+        }
+    }
+}
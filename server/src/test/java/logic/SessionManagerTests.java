@@ -0,0 +1,55 @@
+package logic;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(JUnit4.class)
+public class SessionManagerTests {
+
+    @Test
+    public void testLookup(){
+        SessionManager sessionManager = new SessionManager(60000);
+        String first = sessionManager.createSession("user");
+        String second = sessionManager.createSession("user");
+        assertNotEquals(first, second);
+        assertEquals("user", sessionManager.getUsername(first));
+        assertNull(sessionManager.getUsername("unknown"));
+        assertNull(sessionManager.getUsername(null));
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        SessionManager sessionManager = new SessionManager(20);
+        String token = sessionManager.createSession("user");
+        Thread.sleep(50);
+        assertNull(sessionManager.getUsername(token));
+    }
+
+    @Test
+    public void testSweep() throws InterruptedException {
+        SessionManager sessionManager = new SessionManager(20);
+        String expired = sessionManager.createSession("user");
+        Thread.sleep(50);
+        sessionManager.removeExpired();
+        String token = sessionManager.createSession("user");
+        assertNull(sessionManager.getUsername(expired));
+        assertEquals("user", sessionManager.getUsername(token));
+    }
+
+    @Test
+    public void testInvalidation(){
+        SessionManager sessionManager = new SessionManager(60000);
+        String first = sessionManager.createSession("user");
+        String second = sessionManager.createSession("user");
+        String other = sessionManager.createSession("other");
+        sessionManager.invalidate(first);
+        assertNull(sessionManager.getUsername(first));
+        assertEquals("user", sessionManager.getUsername(second));
+        assertEquals("other", sessionManager.getUsername(other));
+    }
+}
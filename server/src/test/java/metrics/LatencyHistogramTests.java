@@ -0,0 +1,40 @@
+package metrics;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class LatencyHistogramTests {
+
+    @Test
+    public void testBucketsCoverValues(){
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 100, 1000, 123456789, Long.MAX_VALUE};
+        for(long value: values){
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue("value " + value, LatencyHistogram.highestValue(index) >= value);
+            if(index > 0){
+                assertTrue("value " + value, LatencyHistogram.highestValue(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int i = 1; i <= 1000; i++){
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000_000, histogram.getMax());
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 + 500_000 / LatencyHistogram.SUB_BUCKETS);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 990_000 && p99 <= 1000_000);
+        assertEquals(1000_000, histogram.getPercentile(100));
+        assertEquals(0, new LatencyHistogram().getPercentile(99));
+    }
+}